@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.belgif.link.bench;
+
+import java.io.ByteArrayOutputStream;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.DCAT;
+import org.eclipse.rdf4j.model.vocabulary.DCTERMS;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+
+/**
+ * Synthetic link data, similar to the data in the production store.
+ *
+ * @author Bart.Hanssens
+ */
+public class LinkData {
+	private final static ValueFactory F = SimpleValueFactory.getInstance();
+
+	public final static String LINK = "http://www.example.be/link/";
+	public final static String GRAPH = "http://id.belgium.be/graph/";
+	public final static String THEME = "http://publications.europa.eu/resource/authority/data-theme/";
+
+	public final static String[] THEMES = { "AGRI", "ECON", "EDUC", "ENER", "ENVI", "GOVE",
+											"HEAL", "INTR", "JUST", "REGI", "SOCI", "TECH" };
+	private final static String[] LANGS = { "nl", "fr", "de", "en" };
+
+	// links per graph, and per transaction when loading a store
+	public final static int GRAPH_SIZE = 100;
+	private final static int CHUNK = 10_000;
+
+	/**
+	 * Get IRI of a link
+	 *
+	 * @param i number of the link
+	 * @return IRI
+	 */
+	public static IRI link(int i) {
+		return F.createIRI(LINK + i);
+	}
+
+	/**
+	 * Get IRI of the graph of a link
+	 *
+	 * @param i number of the link
+	 * @return IRI
+	 */
+	public static IRI graph(int i) {
+		return F.createIRI(GRAPH + (i / GRAPH_SIZE));
+	}
+
+	/**
+	 * Get IRI of a theme
+	 *
+	 * @param i number of the theme
+	 * @return IRI
+	 */
+	public static IRI theme(int i) {
+		return F.createIRI(THEME + THEMES[i % THEMES.length]);
+	}
+
+	/**
+	 * Generate links, with labels in 4 languages, a title and a theme.
+	 * Every 100 links are stored in the same named graph.
+	 *
+	 * @param links number of links
+	 * @return triples
+	 */
+	public static Model generate(int links) {
+		return generate(0, links);
+	}
+
+	/**
+	 * Generate a range of links
+	 *
+	 * @param from number of the first link
+	 * @param to number of the last link (exclusive)
+	 * @return triples
+	 */
+	public static Model generate(int from, int to) {
+		Model m = new LinkedHashModel();
+		for (int i = from; i < to; i++) {
+			IRI s = link(i);
+			IRI g = graph(i);
+			for (String lang : LANGS) {
+				m.add(s, RDFS.LABEL, F.createLiteral("Website " + i + " " + lang, lang), g);
+			}
+			m.add(s, DCTERMS.TITLE, F.createLiteral("Title of website " + i, "en"), g);
+			m.add(s, DCTERMS.DESCRIPTION,
+					F.createLiteral("Description of website number " + i, "en"), g);
+			m.add(s, DCAT.THEME, theme(i), g);
+		}
+		return m;
+	}
+
+	/**
+	 * Serialize triples
+	 *
+	 * @param m triples
+	 * @param fmt RDF format
+	 * @return bytes
+	 */
+	public static byte[] serialize(Model m, RDFFormat fmt) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Rio.write(m, out, fmt);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Create an in-memory store
+	 *
+	 * @return initialized repository
+	 */
+	public static Repository memoryStore() {
+		Repository repo = new SailRepository(new MemoryStore());
+		repo.initialize();
+		return repo;
+	}
+
+	/**
+	 * Create an in-memory store, loaded with links
+	 *
+	 * @param links number of links
+	 * @return initialized repository
+	 */
+	public static Repository memoryStore(int links) {
+		Repository repo = memoryStore();
+		try (RepositoryConnection conn = repo.getConnection()) {
+			for (int i = 0; i < links; i += CHUNK) {
+				conn.add(generate(i, Math.min(i + CHUNK, links)));
+			}
+		}
+		return repo;
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.belgif.link.bench;
+
+import be.belgif.link.helpers.QueryHelper;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.DCAT;
+import org.eclipse.rdf4j.query.GraphQuery;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.QueryResults;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Named and ad-hoc queries through the query helper, compared to preparing
+ * the query string directly on a connection.
+ *
+ * @author Bart.Hanssens
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PreparedQueryBenchmark {
+	private final static ValueFactory F = SimpleValueFactory.getInstance();
+
+	// same as the query used by QueryHelper.getLabelByPred
+	private final static String Q_PROP
+			= "PREFIX rdfs: <http://www.w3.org/2000/01/rdf-schema#> " + "\n"
+			+ "PREFIX dcterms: <http://purl.org/dc/terms/> " + "\n"
+			+ "PREFIX schema: <http://schema.org/> " + "\n"
+			+ "CONSTRUCT { ?s rdfs:label ?o } "
+			+ " WHERE { { SELECT DISTINCT ?s "
+			+ " WHERE { ?s ?pred ?val . "
+			+ " ?s rdfs:label|dcterms:title|schema:name ?l . "
+			+ " FILTER (STR(?s) > ?after) } "
+			+ " ORDER BY STR(?s) LIMIT %d } "
+			+ " ?s rdfs:label|dcterms:title|schema:name ?o } ";
+
+	private final static String Q_DESCRIBE = "CONSTRUCT { ?s ?p ?o } WHERE { ?s ?p ?o }";
+
+	@Param({"10000"})
+	private int links;
+
+	@Param({"10", "100"})
+	private int limit;
+
+	private Repository repo;
+
+	/**
+	 * Next link to look up, per thread
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+		private int i = 0;
+
+		int next(int links) {
+			i = (i + 7919) % links;
+			return i;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void open() throws Exception {
+		repo = LinkData.memoryStore(links);
+	}
+
+	@TearDown(Level.Trial)
+	public void close() throws Exception {
+		repo.shutDown();
+	}
+
+	/**
+	 * Prepare and evaluate a query directly on a connection
+	 *
+	 * @param qry query string
+	 * @param bindings bindings
+	 * @return triples
+	 */
+	private Model parseAndEvaluate(String qry, Map<String, Value> bindings) {
+		try (RepositoryConnection conn = repo.getConnection()) {
+			GraphQuery gq = conn.prepareGraphQuery(QueryLanguage.SPARQL, qry);
+			bindings.forEach((k, v) -> gq.setBinding(k, v));
+			return QueryResults.asModel(gq.evaluate());
+		}
+	}
+
+	@Benchmark
+	public Model namedHelper(Cursor c) {
+		return QueryHelper.getLabelByPred(repo, DCAT.THEME,
+										LinkData.theme(c.next(links)), null, limit);
+	}
+
+	@Benchmark
+	public Model namedString(Cursor c) {
+		Map<String, Value> map = new HashMap<>();
+		map.put("pred", DCAT.THEME);
+		map.put("val", LinkData.theme(c.next(links)));
+		map.put("after", F.createLiteral(""));
+		return parseAndEvaluate(String.format(Q_PROP, limit), map);
+	}
+
+	@Benchmark
+	public Model adhocHelper(Cursor c) {
+		return QueryHelper.query(repo, Q_DESCRIBE,
+						Collections.singletonMap("s", LinkData.link(c.next(links))));
+	}
+
+	@Benchmark
+	public Model adhocString(Cursor c) {
+		return parseAndEvaluate(Q_DESCRIBE,
+						Collections.singletonMap("s", LinkData.link(c.next(links))));
+	}
+}
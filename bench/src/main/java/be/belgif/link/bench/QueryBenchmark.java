@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.belgif.link.bench;
+
+import be.belgif.link.helpers.QueryHelper;
+import be.belgif.link.helpers.TextIndex;
+import be.belgif.link.helpers.ThemeIndex;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.vocabulary.DCAT;
+import org.eclipse.rdf4j.repository.Repository;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Queries of the query helper, and the in-memory indexes replacing some of them,
+ * on an in-memory store with synthetic links.
+ *
+ * Note that the in-memory store has no full text connector,
+ * so getFTS only measures the overhead of the query.
+ *
+ * @author Bart.Hanssens
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class QueryBenchmark {
+	private final static String Q_DESCRIBE = "CONSTRUCT { ?s ?p ?o } WHERE { ?s ?p ?o }";
+
+	@Param({"10000", "100000", "1000000"})
+	private int links;
+
+	@Param({"100"})
+	private int limit;
+
+	private Repository repo;
+	private ThemeIndex themes;
+	private TextIndex text;
+
+	/**
+	 * Next link to look up, per thread
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+		private int i = 0;
+
+		int next(int links) {
+			i = (i + 7919) % links;
+			return i;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void open() throws Exception {
+		repo = LinkData.memoryStore(links);
+		themes = new ThemeIndex(repo);
+		themes.start();
+		text = new TextIndex(repo);
+		text.start();
+	}
+
+	@TearDown(Level.Trial)
+	public void close() throws Exception {
+		text.stop();
+		themes.stop();
+		repo.shutDown();
+	}
+
+	@Benchmark
+	public Model get(Cursor c) {
+		int i = c.next(links);
+		return QueryHelper.get(repo, LinkData.link(i), LinkData.graph(i));
+	}
+
+	@Benchmark
+	public Model getGraph(Cursor c) {
+		return QueryHelper.get(repo, null, LinkData.graph(c.next(links)));
+	}
+
+	@Benchmark
+	public Model query(Cursor c) {
+		return QueryHelper.query(repo, Q_DESCRIBE,
+					Collections.singletonMap("s", LinkData.link(c.next(links))));
+	}
+
+	@Benchmark
+	public Model getFTS(Cursor c) {
+		return QueryHelper.getFTS(repo, "Website " + c.next(links), 0, limit);
+	}
+
+	@Benchmark
+	public Model getLabelByPred(Cursor c) {
+		return QueryHelper.getLabelByPred(repo, DCAT.THEME,
+									LinkData.theme(c.next(links)), null, limit);
+	}
+
+	@Benchmark
+	public Model textIndex(Cursor c) {
+		return text.search("Website " + c.next(links), 0, limit);
+	}
+
+	@Benchmark
+	public Model themeIndex(Cursor c) {
+		return themes.get(LinkData.theme(c.next(links)), null, limit);
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.belgif.link.bench;
+
+import be.belgif.link.helpers.RDFMediaType;
+import be.belgif.link.helpers.RDFMessageBodyReader;
+import be.belgif.link.helpers.RDFMessageBodyWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+
+import org.eclipse.rdf4j.model.Model;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reading and writing RDF with the Jersey message body reader and writer,
+ * for a single link and for a page of links, with and without compression.
+ * The number of bytes on the wire per statement is reported as a secondary result.
+ *
+ * @author Bart.Hanssens
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SerializationBenchmark {
+	private final static Annotation[] ANNOTATIONS = new Annotation[0];
+
+	@Param({"1", "100"})
+	private int links;
+
+	@Param({RDFMediaType.BINARY, RDFMediaType.JSONLD, RDFMediaType.NQUADS, 
+			RDFMediaType.NTRIPLES, RDFMediaType.TRIG, RDFMediaType.TTL})
+	private String mediaType;
+
+	@Param({"identity", "gzip", "deflate"})
+	private String encoding;
+
+	private final RDFMessageBodyReader reader = new RDFMessageBodyReader();
+	private final RDFMessageBodyWriter writer = new RDFMessageBodyWriter();
+
+	private MediaType mt;
+	private Model model;
+	private byte[] data;
+
+	/**
+	 * Size of the serialized statements, reported next to the time
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Size {
+		public double bytesPerStatement;
+	}
+
+	/**
+	 * Output stream only counting the bytes
+	 */
+	private static class CountingOutputStream extends OutputStream {
+		private long count = 0;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+
+	/**
+	 * Wrap an output stream in a compressing stream
+	 *
+	 * @param out output stream
+	 * @return output stream
+	 * @throws IOException
+	 */
+	private OutputStream encode(OutputStream out) throws IOException {
+		switch (encoding) {
+			case "gzip":
+				return new GZIPOutputStream(out);
+			case "deflate":
+				return new DeflaterOutputStream(out);
+			default:
+				return out;
+		}
+	}
+
+	/**
+	 * Wrap an input stream in a decompressing stream
+	 *
+	 * @param in input stream
+	 * @return input stream
+	 * @throws IOException
+	 */
+	private InputStream decode(InputStream in) throws IOException {
+		switch (encoding) {
+			case "gzip":
+				return new GZIPInputStream(in);
+			case "deflate":
+				return new InflaterInputStream(in);
+			default:
+				return in;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void generate() throws IOException {
+		mt = MediaType.valueOf(mediaType);
+		model = LinkData.generate(links);
+
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		try (OutputStream out = encode(bout)) {
+			out.write(LinkData.serialize(model, RDFMediaType.getRDFFormat(mt)));
+		}
+		data = bout.toByteArray();
+	}
+
+	@Benchmark
+	public long write(Size size) throws IOException {
+		CountingOutputStream count = new CountingOutputStream();
+		try (OutputStream out = encode(count)) {
+			writer.writeTo(model, Model.class, Model.class, ANNOTATIONS, mt,
+						new MultivaluedHashMap<>(), out);
+		}
+		size.bytesPerStatement = (double) count.count / model.size();
+		return count.count;
+	}
+
+	@Benchmark
+	public void read(Blackhole bh) throws IOException {
+		bh.consume(reader.readFrom(Model.class, Model.class, ANNOTATIONS, mt,
+						new MultivaluedHashMap<>(), decode(new ByteArrayInputStream(data))));
+	}
+}
@@ -28,20 +28,59 @@ package be.belgif.link;
 import be.belgif.link.auth.DummyUser;
 import be.belgif.link.auth.UpdateAuth;
 import be.belgif.link.health.RdfStoreHealthCheck;
+import be.belgif.link.helpers.AsyncStore;
+import be.belgif.link.helpers.ChangeLog;
+import be.belgif.link.helpers.ChangeNotifier;
+import be.belgif.link.helpers.CircuitBreakerRepository;
+import be.belgif.link.helpers.Exporter;
+import be.belgif.link.helpers.GraphIndex;
+import be.belgif.link.helpers.LinkCache;
+import be.belgif.link.helpers.LinkMetrics;
+import be.belgif.link.helpers.LoadBalancedRepository;
 import be.belgif.link.helpers.ManagedRepository;
+import be.belgif.link.helpers.ParallelLoader;
+import be.belgif.link.helpers.PartitionedRepository;
 import be.belgif.link.helpers.RDFMessageBodyReader;
 import be.belgif.link.helpers.RDFMessageBodyWriter;
+import be.belgif.link.helpers.RDFStreamMessageBodyWriter;
+import be.belgif.link.helpers.StoreHttpClientBuilder;
+import be.belgif.link.helpers.StoreMonitor;
+import be.belgif.link.helpers.TextIndex;
+import be.belgif.link.helpers.ThemeIndex;
+import be.belgif.link.helpers.VersionMap;
 
 import be.belgif.link.resources.LinkResource;
+import be.belgif.link.tasks.RebuildGraphIndexTask;
+import be.belgif.link.tasks.RebuildTextIndexTask;
+import be.belgif.link.tasks.RebuildThemeIndexTask;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
 
 import io.dropwizard.Application;
 import io.dropwizard.auth.AuthDynamicFeature;
 import io.dropwizard.auth.basic.BasicCredentialAuthFilter;
 import io.dropwizard.setup.Environment;
 
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
 
 import org.eclipse.rdf4j.repository.Repository;
 import org.eclipse.rdf4j.repository.manager.RemoteRepositoryManager;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.eclipse.rdf4j.sail.nativerdf.NativeStore;
+
+import org.glassfish.jersey.message.DeflateEncoder;
+import org.glassfish.jersey.message.GZipEncoder;
+import org.glassfish.jersey.server.filter.EncodingFilter;
 
 
 /**
@@ -72,13 +111,48 @@ public class App extends Application<AppConfig> {
 	}
 	
 	/**
-	 * Configure a triple store repository
+	 * Configure an embedded native store
 	 * 
 	 * @param cfg configuration object
-	 * @return repository 
+	 * @param dir data directory
+	 * @return repository
+	 */
+	private Repository configNative(AppConfig cfg, File dir) {
+		return new SailRepository(new NativeStore(dir, cfg.getStoreIndexes()));
+	}
+
+	/**
+	 * Configure an embedded in-memory store, persisted if a directory is set
+	 * 
+	 * @param cfg configuration object
+	 * @param dir data directory or null
+	 * @return repository
+	 */
+	private Repository configMemory(AppConfig cfg, File dir) {
+		MemoryStore mem;
+		if (dir != null) {
+			mem = new MemoryStore(dir);
+			mem.setPersist(true);
+			mem.setSyncDelay(cfg.getStoreSyncDelay().toMilliseconds());
+		} else {
+			mem = new MemoryStore();
+		}
+		return new SailRepository(mem);
+	}
+
+	/**
+	 * Configure a remote triple store repository
+	 * 
+	 * @param cfg configuration object
+	 * @param env environment, for the HTTP client
+	 * @param url URL of the RDF4J server
+	 * @param client name of the HTTP client
+	 * @return repository
 	 */
-	private Repository configRepo(AppConfig cfg) {
-		RemoteRepositoryManager mgr = new RemoteRepositoryManager(cfg.getStore());
+	private Repository configRemote(AppConfig cfg, Environment env, String url, String client) {
+		RemoteRepositoryManager mgr = new RemoteRepositoryManager(url);
+		mgr.setHttpClient(new StoreHttpClientBuilder(env)
+								.using(cfg.getStoreClient()).build(client));
 		if (cfg.getStoreUsername() != null && !cfg.getUsername().isEmpty()) {
 			mgr.setUsernameAndPassword(cfg.getStoreUsername(), cfg.getStorePassword());
 		}
@@ -86,6 +160,69 @@ public class App extends Application<AppConfig> {
 		return mgr.getRepository(cfg.getStoreName());
 	}
 
+	/**
+	 * Configure a triple store repository
+	 * 
+	 * @param cfg configuration object
+	 * @param env environment, for the HTTP client of a remote store
+	 * @return repository 
+	 */
+	private Repository configRepo(AppConfig cfg, Environment env) {
+		switch (cfg.getStoreType()) {
+			case "native":
+				return configNative(cfg, new File(cfg.getStoreDir()));
+			case "memory":
+				return configMemory(cfg, 
+						(cfg.getStoreDir() != null) ? new File(cfg.getStoreDir()) : null);
+			default:
+				break;
+		}
+		return configRemote(cfg, env, cfg.getStore(), "triplestore");
+	}
+
+	/**
+	 * Configure one partition of the store: a subdirectory of the store directory
+	 * for an embedded store, or the URL of an RDF4J server for a remote store
+	 * 
+	 * @param cfg configuration object
+	 * @param env environment, for the HTTP client of a remote store
+	 * @param shard directory or URL
+	 * @param name name of the partition
+	 * @return repository 
+	 */
+	private Repository configShard(AppConfig cfg, Environment env, String shard, String name) {
+		switch (cfg.getStoreType()) {
+			case "native":
+				return configNative(cfg, new File(cfg.getStoreDir(), shard));
+			case "memory":
+				return configMemory(cfg, 
+						(cfg.getStoreDir() != null) ? new File(cfg.getStoreDir(), shard) : null);
+			default:
+				break;
+		}
+		return configRemote(cfg, env, shard, "triplestore-" + name);
+	}
+
+	/**
+	 * Probe a store on a schedule
+	 * 
+	 * @param name name of the store
+	 * @param store repository
+	 * @param exec scheduled executor
+	 * @param cfg configuration object
+	 * @param env environment
+	 * @return store monitor
+	 */
+	private StoreMonitor monitor(String name, Repository store, ScheduledExecutorService exec,
+									AppConfig cfg, Environment env) {
+		StoreMonitor monitor = new StoreMonitor(name, store, exec, 
+										cfg.getStoreProbeInterval().toMilliseconds(),
+										cfg.getStoreProbeTimeout().toMilliseconds(),
+										cfg.getStoreProbeFailures(), env.metrics());
+		env.lifecycle().manage(monitor);
+		return monitor;
+	}
+
 	@Override
 	public String getName() {
 		return "lod-link";
@@ -94,8 +231,6 @@ public class App extends Application<AppConfig> {
 	
 	@Override
     public void run(AppConfig config, Environment env) {
-		Repository repo = configRepo(config);
-	
 		// Authentication
 		env.jersey().register(new AuthDynamicFeature(
 				new BasicCredentialAuthFilter.Builder<DummyUser>()
@@ -103,19 +238,145 @@ public class App extends Application<AppConfig> {
 								new UpdateAuth(config.getUsername(), config.getPassword()))
 						.buildAuthFilter()));
 		
-		// Managed resource
-		env.lifecycle().manage(new ManagedRepository(repo));
+		// Metrics of the static helpers and writers
+		LinkMetrics.register(env.metrics(), config.getSlowQueryThreshold().toMilliseconds());
+
+		// Probe the store(s) on a schedule, and fail fast while the primary is down
+		boolean remote = !config.getStoreType().equals("native") 
+							&& !config.getStoreType().equals("memory");
+		List<String> shards = config.getStoreShards();
+		List<String> replicas = (remote && shards.isEmpty()) ? config.getStoreReplicas() 
+																: Collections.emptyList();
+		ScheduledExecutorService probe = env.lifecycle()
+						.scheduledExecutorService("store-probe-%d")
+						.threads(Math.max(1, shards.size()) + replicas.size()).build();
+		Meter rejected = env.metrics().meter(
+								MetricRegistry.name(CircuitBreakerRepository.class, "rejected"));
+
+		Repository repo;
+		if (shards.isEmpty()) {
+			Repository store = configRepo(config, env);
+			env.lifecycle().manage(new ManagedRepository(store));
+			StoreMonitor monitor = monitor("primary", store, probe, config, env);
+			repo = new CircuitBreakerRepository(store, monitor, rejected);
+			env.healthChecks().register("triplestore", new RdfStoreHealthCheck(monitor));
+		} else {
+			// Partitioned store, each partition is probed and can fail on its own.
+			// The position on the hash ring depends on the configured directory or URL,
+			// not on the order of the partitions
+			Map<String, Repository> parts = new LinkedHashMap<>();
+			for (int i = 0; i < shards.size(); i++) {
+				String name = "shard-" + i;
+				Repository shard = configShard(config, env, shards.get(i), name);
+				env.lifecycle().manage(new ManagedRepository(shard));
+				StoreMonitor monitor = monitor(name, shard, probe, config, env);
+				parts.put(shards.get(i), new CircuitBreakerRepository(shard, monitor, rejected));
+				env.healthChecks().register("triplestore-" + name, new RdfStoreHealthCheck(monitor));
+			}
+			// Operations on all shards, run in parallel for each request
+			ExecutorService scatter = env.lifecycle().executorService("shard-%d")
+											.minThreads(config.getStoreThreads() * shards.size())
+											.maxThreads(config.getStoreThreads() * shards.size())
+											.build();
+			repo = new PartitionedRepository(parts, scatter);
+		}
+
+		// Read replicas, used for reading instead of the primary
+		Repository reads = repo;
+		if (!replicas.isEmpty()) {
+			LoadBalancedRepository lb = new LoadBalancedRepository(repo, env.metrics());
+			for (int i = 0; i < replicas.size(); i++) {
+				String name = "replica-" + i;
+				Repository replica = configRemote(config, env, replicas.get(i), "triplestore-" + name);
+				env.lifecycle().manage(new ManagedRepository(replica));
+				lb.add(name, replica, monitor(name, replica, probe, config, env));
+			}
+			reads = lb;
+		}
 		
 		// RDF Serialization formats
 		env.jersey().register(new RDFMessageBodyReader());
 		env.jersey().register(new RDFMessageBodyWriter());
+		env.jersey().register(new RDFStreamMessageBodyWriter());
+
+		// Compressed responses, following the order of the Accept-Encoding header
+		EncodingFilter.enableFor(env.jersey().getResourceConfig(), 
+									GZipEncoder.class, DeflateEncoder.class);
 		
-		// Resources / "web pages"
-		env.jersey().register(new LinkResource(repo));
+		// Cache
+		LinkCache cache = new LinkCache(config.getCacheSize(), 
+								config.getCacheBytes().toBytes(),
+								config.getCacheTtl().toSeconds(), env.metrics());
+		ChangeNotifier notifier = new ChangeNotifier();
+		notifier.register(cache);
+
+		// Indexes
+		ThemeIndex themes = null;
+		if (config.getThemeIndex()) {
+			themes = new ThemeIndex(repo);
+			env.lifecycle().manage(themes);
+			env.admin().addTask(new RebuildThemeIndexTask(themes));
+			notifier.register(themes);
+		}
+		GraphIndex graphs = null;
+		if (config.getGraphIndex()) {
+			graphs = new GraphIndex(repo);
+			env.lifecycle().manage(graphs);
+			env.admin().addTask(new RebuildGraphIndexTask(graphs));
+			notifier.register(graphs);
+		}
+		TextIndex text = null;
+		if (config.getTextIndex()) {
+			text = new TextIndex(repo);
+			env.lifecycle().manage(text);
+			env.admin().addTask(new RebuildTextIndexTask(text));
+			notifier.register(text);
+		}
+
+		// Bulk import
+		ParallelLoader loader = new ParallelLoader(repo, config.getImportThreads(),
+								config.getImportWriters(), config.getImportBatchSize());
 
-		// Monitoring
-		RdfStoreHealthCheck check = new RdfStoreHealthCheck(repo);
-		env.healthChecks().register("triplestore", check);
+		// Read requests, waiting for the store on a bounded executor
+		BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(config.getStoreQueueSize());
+		ExecutorService exec = env.lifecycle().executorService("store-%d")
+											.minThreads(config.getStoreThreads())
+											.maxThreads(config.getStoreThreads())
+											.workQueue(queue).build();
+		AsyncStore async = new AsyncStore(exec, queue, 
+								config.getStoreTimeout().toMilliseconds(), env.metrics());
+
+		// Change log, for consumers following the updates
+		ChangeLog changes = null;
+		if (config.getChangeLogDir() != null) {
+			ScheduledExecutorService expiry = env.lifecycle()
+								.scheduledExecutorService("changelog-%d").build();
+			changes = new ChangeLog(new File(config.getChangeLogDir()),
+								config.getChangeLogSegmentSize().toBytes(),
+								config.getChangeLogRetention().toMilliseconds(),
+								expiry, env.getObjectMapper(), env.metrics());
+			env.lifecycle().manage(changes);
+		}
+
+		// Versions of subjects and graphs, rebuilt from the change log (if any)
+		VersionMap versions = null;
+		if (config.getVersionMap()) {
+			versions = new VersionMap(changes, env.metrics());
+			env.lifecycle().manage(versions);
+		}
+
+		// Full export, throttled
+		Exporter exporter = new Exporter(repo, config.getExportThreads(),
+								config.getExportRate(), config.getExportCheckpoint());
+
+		// Resources / "web pages"
+		env.jersey().register(new LinkResource(repo, reads, cache, themes, graphs, text,
+											config.getSearchLimit(), notifier,
+											config.getPageSize(), config.getMaxPageSize(),
+											config.getImportBatchSize(), loader, async, exporter,
+											changes, config.getChangeLogWait().toMilliseconds(),
+											versions,
+											config.getStorePin().toMilliseconds()));
 	}
 	
 	/**
@@ -28,6 +28,18 @@ package be.belgif.link;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import io.dropwizard.Configuration;
+import io.dropwizard.util.Duration;
+import io.dropwizard.util.Size;
+import io.dropwizard.validation.MinDuration;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.validation.Valid;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
 
 /**
  *
@@ -39,11 +51,91 @@ public class AppConfig extends Configuration {
 	private String password;
 	
 	private String store;
+	// read replicas of the remote store
+	private List<String> storeReplicas = Collections.emptyList();
+	private Duration storePin = Duration.seconds(5);
+	// partitions: server URLs, or directories / names of embedded stores
+	private List<String> storeShards = Collections.emptyList();
 	private String storeName;
+	// remote, native or memory
+	private String storeType = "remote";
+	// embedded store
+	private String storeDir;
+	private String storeIndexes = "spoc,posc";
+	private Duration storeSyncDelay = Duration.seconds(1);
 	// RDF repo user/pass
 	private String storeUsername;
 	private String storePassword;
+	// HTTP connection pool for the remote store
+	@Valid
+	@NotNull
+	private StoreClientConfiguration storeClient = new StoreClientConfiguration();
+	// read requests waiting for the store
+	@Min(1)
+	private int storeThreads = 32;
+	@Min(1)
+	private int storeQueueSize = 256;
+	@MinDuration(value = 1, unit = TimeUnit.MILLISECONDS)
+	private Duration storeTimeout = Duration.seconds(30);
+	// health probe, the store is down after a number of failed or slow probes
+	@MinDuration(value = 1, unit = TimeUnit.MILLISECONDS)
+	private Duration storeProbeInterval = Duration.seconds(5);
+	@MinDuration(value = 1, unit = TimeUnit.MILLISECONDS)
+	private Duration storeProbeTimeout = Duration.seconds(2);
+	@Min(1)
+	private int storeProbeFailures = 2;
 	
+	// read-through cache
+	@Min(1)
+	private long cacheSize = 100_000;
+	private Size cacheBytes = Size.megabytes(32);
+	private Duration cacheTtl = Duration.minutes(10);
+
+	// in-memory theme index
+	private boolean themeIndex = true;
+
+	// in-memory index of the subjects per graph, off by default (heap grows with the links)
+	private boolean graphIndex = false;
+
+	// embedded full text index, kept in memory
+	private boolean textIndex = true;
+	// maximum number of ranked search results, offset included
+	@Min(1)
+	private int searchLimit = 10_000;
+
+	// paging of search results and graphs, number of subjects
+	@Min(1)
+	private int pageSize = 100;
+	@Min(1)
+	private int maxPageSize = 1000;
+
+	// bulk import
+	@Min(1)
+	private int importBatchSize = 10_000;
+	@Min(1)
+	private int importThreads = Runtime.getRuntime().availableProcessors();
+	@Min(1)
+	private int importWriters = 2;
+
+	// full export, statements per second (0 is unlimited) and between checkpoints
+	@Min(1)
+	private int exportThreads = 2;
+	@DecimalMin("0")
+	private double exportRate = 100_000;
+	@Min(1)
+	private int exportCheckpoint = 100_000;
+
+	// change log, disabled when no directory is set
+	private String changeLogDir;
+	private Size changeLogSegmentSize = Size.megabytes(16);
+	private Duration changeLogRetention = Duration.days(7);
+	private Duration changeLogWait = Duration.seconds(30);
+
+	// versions of subjects and graphs, for conditional requests
+	private boolean versionMap = false;
+
+	// log store operations taking longer than this
+	private Duration slowQueryThreshold = Duration.seconds(1);
 
 	@JsonProperty
 	public String getStore() {
@@ -63,6 +155,56 @@ public class AppConfig extends Configuration {
 		this.storeName = storeName ;
 	}
 	
+	@JsonProperty
+	public StoreClientConfiguration getStoreClient() {
+		return storeClient;
+	}
+
+	@JsonProperty
+	public void setStoreClient(StoreClientConfiguration storeClient) {
+		this.storeClient = storeClient;
+	}
+
+	@JsonProperty
+	public String getStoreType() {
+		return storeType;
+	}
+
+	@JsonProperty
+	public void setStoreType(String storeType) {
+		this.storeType = storeType;
+	}
+
+	@JsonProperty
+	public String getStoreDir() {
+		return storeDir;
+	}
+
+	@JsonProperty
+	public void setStoreDir(String storeDir) {
+		this.storeDir = storeDir;
+	}
+
+	@JsonProperty
+	public String getStoreIndexes() {
+		return storeIndexes;
+	}
+
+	@JsonProperty
+	public void setStoreIndexes(String storeIndexes) {
+		this.storeIndexes = storeIndexes;
+	}
+
+	@JsonProperty
+	public Duration getStoreSyncDelay() {
+		return storeSyncDelay;
+	}
+
+	@JsonProperty
+	public void setStoreSyncDelay(Duration delay) {
+		this.storeSyncDelay = delay;
+	}
+
 	@JsonProperty
 	public String getUsername() {
 		return username;
@@ -102,4 +244,304 @@ public class AppConfig extends Configuration {
 	public void setStorePassword(String password) {
 		this.storePassword = password;
 	}
+
+	@JsonProperty
+	public long getCacheSize() {
+		return cacheSize;
+	}
+
+	@JsonProperty
+	public void setCacheSize(long size) {
+		this.cacheSize = size;
+	}
+
+	@JsonProperty
+	public Size getCacheBytes() {
+		return cacheBytes;
+	}
+
+	@JsonProperty
+	public void setCacheBytes(Size bytes) {
+		this.cacheBytes = bytes;
+	}
+
+	@JsonProperty
+	public Duration getCacheTtl() {
+		return cacheTtl;
+	}
+
+	@JsonProperty
+	public void setCacheTtl(Duration ttl) {
+		this.cacheTtl = ttl;
+	}
+
+	@JsonProperty
+	public int getImportBatchSize() {
+		return importBatchSize;
+	}
+
+	@JsonProperty
+	public void setImportBatchSize(int size) {
+		this.importBatchSize = size;
+	}
+
+	@JsonProperty
+	public int getImportThreads() {
+		return importThreads;
+	}
+
+	@JsonProperty
+	public void setImportThreads(int threads) {
+		this.importThreads = threads;
+	}
+
+	@JsonProperty
+	public int getImportWriters() {
+		return importWriters;
+	}
+
+	@JsonProperty
+	public void setImportWriters(int writers) {
+		this.importWriters = writers;
+	}
+
+	@JsonProperty
+	public boolean getThemeIndex() {
+		return themeIndex;
+	}
+
+	@JsonProperty
+	public void setThemeIndex(boolean themeIndex) {
+		this.themeIndex = themeIndex;
+	}
+
+	@JsonProperty
+	public boolean getGraphIndex() {
+		return graphIndex;
+	}
+
+	@JsonProperty
+	public void setGraphIndex(boolean graphIndex) {
+		this.graphIndex = graphIndex;
+	}
+
+	@JsonProperty
+	public boolean getTextIndex() {
+		return textIndex;
+	}
+
+	@JsonProperty
+	public void setTextIndex(boolean textIndex) {
+		this.textIndex = textIndex;
+	}
+
+	@JsonProperty
+	public int getSearchLimit() {
+		return searchLimit;
+	}
+
+	@JsonProperty
+	public void setSearchLimit(int searchLimit) {
+		this.searchLimit = searchLimit;
+	}
+
+	@JsonProperty
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	@JsonProperty
+	public void setPageSize(int pageSize) {
+		this.pageSize = pageSize;
+	}
+
+	@JsonProperty
+	public int getMaxPageSize() {
+		return maxPageSize;
+	}
+
+	@JsonProperty
+	public void setMaxPageSize(int maxPageSize) {
+		this.maxPageSize = maxPageSize;
+	}
+
+	@JsonProperty
+	public int getStoreThreads() {
+		return storeThreads;
+	}
+
+	@JsonProperty
+	public void setStoreThreads(int storeThreads) {
+		this.storeThreads = storeThreads;
+	}
+
+	@JsonProperty
+	public int getStoreQueueSize() {
+		return storeQueueSize;
+	}
+
+	@JsonProperty
+	public void setStoreQueueSize(int storeQueueSize) {
+		this.storeQueueSize = storeQueueSize;
+	}
+
+	@JsonProperty
+	public Duration getStoreTimeout() {
+		return storeTimeout;
+	}
+
+	@JsonProperty
+	public void setStoreTimeout(Duration storeTimeout) {
+		this.storeTimeout = storeTimeout;
+	}
+
+	@JsonProperty
+	public List<String> getStoreReplicas() {
+		return storeReplicas;
+	}
+
+	@JsonProperty
+	public void setStoreReplicas(List<String> storeReplicas) {
+		this.storeReplicas = storeReplicas;
+	}
+
+	@JsonProperty
+	public List<String> getStoreShards() {
+		return storeShards;
+	}
+
+	@JsonProperty
+	public void setStoreShards(List<String> storeShards) {
+		this.storeShards = storeShards;
+	}
+
+	@JsonProperty
+	public Duration getStorePin() {
+		return storePin;
+	}
+
+	@JsonProperty
+	public void setStorePin(Duration storePin) {
+		this.storePin = storePin;
+	}
+
+	@JsonProperty
+	public Duration getStoreProbeInterval() {
+		return storeProbeInterval;
+	}
+
+	@JsonProperty
+	public void setStoreProbeInterval(Duration storeProbeInterval) {
+		this.storeProbeInterval = storeProbeInterval;
+	}
+
+	@JsonProperty
+	public Duration getStoreProbeTimeout() {
+		return storeProbeTimeout;
+	}
+
+	@JsonProperty
+	public void setStoreProbeTimeout(Duration storeProbeTimeout) {
+		this.storeProbeTimeout = storeProbeTimeout;
+	}
+
+	@JsonProperty
+	public int getStoreProbeFailures() {
+		return storeProbeFailures;
+	}
+
+	@JsonProperty
+	public void setStoreProbeFailures(int storeProbeFailures) {
+		this.storeProbeFailures = storeProbeFailures;
+	}
+
+	@JsonProperty
+	public int getExportThreads() {
+		return exportThreads;
+	}
+
+	@JsonProperty
+	public void setExportThreads(int exportThreads) {
+		this.exportThreads = exportThreads;
+	}
+
+	@JsonProperty
+	public double getExportRate() {
+		return exportRate;
+	}
+
+	@JsonProperty
+	public void setExportRate(double exportRate) {
+		this.exportRate = exportRate;
+	}
+
+	@JsonProperty
+	public int getExportCheckpoint() {
+		return exportCheckpoint;
+	}
+
+	@JsonProperty
+	public void setExportCheckpoint(int exportCheckpoint) {
+		this.exportCheckpoint = exportCheckpoint;
+	}
+
+	@JsonProperty
+	public String getChangeLogDir() {
+		return changeLogDir;
+	}
+
+	@JsonProperty
+	public void setChangeLogDir(String changeLogDir) {
+		this.changeLogDir = changeLogDir;
+	}
+
+	@JsonProperty
+	public Size getChangeLogSegmentSize() {
+		return changeLogSegmentSize;
+	}
+
+	@JsonProperty
+	public void setChangeLogSegmentSize(Size changeLogSegmentSize) {
+		this.changeLogSegmentSize = changeLogSegmentSize;
+	}
+
+	@JsonProperty
+	public Duration getChangeLogRetention() {
+		return changeLogRetention;
+	}
+
+	@JsonProperty
+	public void setChangeLogRetention(Duration changeLogRetention) {
+		this.changeLogRetention = changeLogRetention;
+	}
+
+	@JsonProperty
+	public Duration getChangeLogWait() {
+		return changeLogWait;
+	}
+
+	@JsonProperty
+	public void setChangeLogWait(Duration changeLogWait) {
+		this.changeLogWait = changeLogWait;
+	}
+
+	@JsonProperty
+	public boolean getVersionMap() {
+		return versionMap;
+	}
+
+	@JsonProperty
+	public void setVersionMap(boolean versionMap) {
+		this.versionMap = versionMap;
+	}
+
+	@JsonProperty
+	public Duration getSlowQueryThreshold() {
+		return slowQueryThreshold;
+	}
+
+	@JsonProperty
+	public void setSlowQueryThreshold(Duration slowQueryThreshold) {
+		this.slowQueryThreshold = slowQueryThreshold;
+	}
 }
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.belgif.link;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.dropwizard.client.HttpClientConfiguration;
+import io.dropwizard.util.Duration;
+
+/**
+ * HTTP client for the remote triple store, with defaults suitable for SPARQL
+ * queries instead of the (short) Dropwizard defaults.
+ *
+ * @author Bart.Hanssens
+ */
+public class StoreClientConfiguration extends HttpClientConfiguration {
+	// close connections that were not used for a while
+	private Duration idleTimeout = Duration.minutes(1);
+
+	@JsonProperty
+	public Duration getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	@JsonProperty
+	public void setIdleTimeout(Duration idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * Constructor
+	 */
+	public StoreClientConfiguration() {
+		setMaxConnections(64);
+		setMaxConnectionsPerRoute(64);
+		setKeepAlive(Duration.seconds(30));
+		setConnectionTimeout(Duration.seconds(5));
+		setConnectionRequestTimeout(Duration.seconds(5));
+		setTimeout(Duration.minutes(1));
+	}
+}
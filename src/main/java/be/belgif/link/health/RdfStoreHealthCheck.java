@@ -25,30 +25,32 @@
  */
 package be.belgif.link.health;
 
+import be.belgif.link.helpers.StoreMonitor;
+
 import com.codahale.metrics.health.HealthCheck;
-import org.eclipse.rdf4j.repository.Repository;
 
 /**
- * Check if triple store can be reached
+ * Check if triple store can be reached, using the result of the last probes
+ * instead of querying the store on each check.
  * 
  * @author Bart.Hanssens
  */
 public class RdfStoreHealthCheck extends HealthCheck {
-	private final Repository repo;
+	private final StoreMonitor monitor;
 	
 	@Override
 	protected Result check() throws Exception {
-		return repo.getConnection().isOpen() 
-								? Result.healthy() 
-								: Result.unhealthy("Triplestore unreachable");
+		return monitor.isAvailable() 
+				? Result.healthy("Latency %d ms", monitor.getLatency()) 
+				: Result.unhealthy("Triplestore unreachable: %s", monitor.getError());
 	}
 	
 	/**
 	 * Constructor
 	 * 
-	 * @param repo (remote) repository
+	 * @param monitor store monitor
 	 */
-	public RdfStoreHealthCheck(Repository repo) {
-		this.repo = repo;
+	public RdfStoreHealthCheck(StoreMonitor monitor) {
+		this.monitor = monitor;
 	}
 }
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.belgif.link.helpers;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import io.dropwizard.jersey.errors.ErrorMessage;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+/**
+ * Runs requests to the triple store on a bounded executor, so the HTTP worker
+ * threads are not tied to the latency of the store.
+ *
+ * Requests are answered with 503 when the queue is full or the request takes
+ * longer than the timeout. Requests that timed out are cancelled, so they
+ * do not keep a place in the queue or a thread.
+ *
+ * @author Bart.Hanssens
+ */
+public class AsyncStore {
+	private final ExecutorService exec;
+	private final BlockingQueue<Runnable> queue;
+	private final long timeout;
+	private final MetricRegistry metrics;
+
+	/**
+	 * Service unavailable, with a hint to try again.
+	 * Not thrown as an exception, since the exception mapper drops the headers.
+	 *
+	 * @param msg message
+	 * @param retry seconds to wait before trying again
+	 * @return response
+	 */
+	private static Response unavailable(String msg, Object retry) {
+		int status = Response.Status.SERVICE_UNAVAILABLE.getStatusCode();
+		return Response.status(status).header(HttpHeaders.RETRY_AFTER, retry)
+					.type(MediaType.APPLICATION_JSON_TYPE)
+					.entity(new ErrorMessage(status, msg)).build();
+	}
+
+	/**
+	 * Store busy, try again in a second
+	 *
+	 * @return response
+	 */
+	private static Response unavailable() {
+		return unavailable("Triple store busy", 1);
+	}
+
+	/**
+	 * Run the work on the executor and resume the suspended response with the result,
+	 * or with the exception thrown by the work.
+	 * Exceptions are metered here, as with ExceptionMetered on a synchronous method.
+	 *
+	 * @param resp suspended response
+	 * @param name name of the timer and the exception meter
+	 * @param work work to be done
+	 */
+	public void submit(AsyncResponse resp, String name, Callable<?> work) {
+		Timer.Context ctx = metrics.timer(name).time();
+		AtomicReference<Future<?>> task = new AtomicReference<>();
+
+		resp.setTimeout(timeout, TimeUnit.MILLISECONDS);
+		resp.setTimeoutHandler(r -> {
+			metrics.meter(MetricRegistry.name(AsyncStore.class, "timeouts")).mark();
+			r.resume(unavailable());
+			// interrupt the work, or remove it from the queue
+			Future<?> f = task.get();
+			if (f != null && f.cancel(true) && queue.remove(f)) {
+				ctx.stop();
+			}
+		});
+		try {
+			task.set(exec.submit(() -> {
+				try {
+					// skip if the request already timed out while waiting in the queue
+					if (!resp.isDone()) {
+						resp.resume(work.call());
+					}
+				} catch (ServiceUnavailableException sue) {
+					// e.g. the circuit breaker is open
+					metrics.meter(MetricRegistry.name(name, "exceptions")).mark();
+					resp.resume(unavailable(sue.getMessage(), 
+						sue.getResponse().getHeaderString(HttpHeaders.RETRY_AFTER)));
+				} catch (Exception e) {
+					metrics.meter(MetricRegistry.name(name, "exceptions")).mark();
+					resp.resume(e);
+				} finally {
+					ctx.stop();
+				}
+			}));
+		} catch (RejectedExecutionException ree) {
+			ctx.stop();
+			metrics.meter(MetricRegistry.name(AsyncStore.class, "rejected")).mark();
+			resp.resume(unavailable());
+		}
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param exec bounded executor
+	 * @param queue work queue of the executor
+	 * @param timeout timeout in milliseconds
+	 * @param metrics metric registry
+	 */
+	public AsyncStore(ExecutorService exec, BlockingQueue<Runnable> queue,
+						long timeout, MetricRegistry metrics) {
+		this.exec = exec;
+		this.queue = queue;
+		this.timeout = timeout;
+		this.metrics = metrics;
+		metrics.register(MetricRegistry.name(AsyncStore.class, "queue"),
+							(Gauge<Integer>) queue::size);
+	}
+}
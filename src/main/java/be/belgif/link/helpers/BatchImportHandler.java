@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.belgif.link.helpers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.rio.RDFHandlerException;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * RDF handler committing parsed statements to the store in batches,
+ * each batch in its own transaction.
+ *
+ * @author Bart.Hanssens
+ */
+public class BatchImportHandler extends AbstractRDFHandler {
+	private final static Logger LOG = LoggerFactory.getLogger(BatchImportHandler.class);
+
+	private final RepositoryConnection conn;
+	private final int batchSize;
+	private final List<Statement> batch;
+
+	private long count = 0;
+	private long batches = 0;
+	private long start;
+
+	/**
+	 * Commit the current batch in one transaction
+	 */
+	private void commit() {
+		if (batch.isEmpty()) {
+			return;
+		}
+		conn.begin();
+		try {
+			conn.add(batch);
+			conn.commit();
+		} finally {
+			if (conn.isActive()) {
+				conn.rollback();
+			}
+		}
+		count += batch.size();
+		batches++;
+		batch.clear();
+
+		LOG.info("Imported {} statements in {} batches, {} statements/s",
+						count, batches, getRate());
+	}
+
+	/**
+	 * Get number of statements committed so far
+	 *
+	 * @return number of statements
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Get number of batches committed so far
+	 *
+	 * @return number of batches
+	 */
+	public long getBatches() {
+		return batches;
+	}
+
+	/**
+	 * Get elapsed time since start of import
+	 *
+	 * @return milliseconds
+	 */
+	public long getMillis() {
+		return System.currentTimeMillis() - start;
+	}
+
+	/**
+	 * Get throughput
+	 *
+	 * @return statements per second
+	 */
+	public long getRate() {
+		long ms = getMillis();
+		return (ms > 0) ? count * 1000 / ms : count;
+	}
+
+	@Override
+	public void startRDF() throws RDFHandlerException {
+		start = System.currentTimeMillis();
+	}
+
+	@Override
+	public void handleStatement(Statement st) throws RDFHandlerException {
+		batch.add(st);
+		if (batch.size() >= batchSize) {
+			commit();
+		}
+	}
+
+	@Override
+	public void endRDF() throws RDFHandlerException {
+		commit();
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param conn repository connection
+	 * @param batchSize number of statements per transaction
+	 */
+	public BatchImportHandler(RepositoryConnection conn, int batchSize) {
+		this.conn = conn;
+		this.batchSize = batchSize;
+		this.batch = new ArrayList<>(batchSize);
+	}
+}
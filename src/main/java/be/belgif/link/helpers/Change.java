@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.belgif.link.helpers;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+/**
+ * Entry in the change log: an update of the store.
+ * Statements are written as N-Quads.
+ *
+ * @author Bart.Hanssens
+ */
+@JsonPropertyOrder({"seq", "time", "op", "subject", "graph", "added", "removed"})
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class Change {
+	private final long seq;
+	private final long time;
+	private final String op;
+	private final String subject;
+	private final String graph;
+	private final String added;
+	private final String removed;
+
+	@JsonProperty
+	public long getSeq() {
+		return seq;
+	}
+
+	@JsonProperty
+	public long getTime() {
+		return time;
+	}
+
+	@JsonProperty
+	public String getOp() {
+		return op;
+	}
+
+	@JsonProperty
+	public String getSubject() {
+		return subject;
+	}
+
+	@JsonProperty
+	public String getGraph() {
+		return graph;
+	}
+
+	@JsonProperty
+	public String getAdded() {
+		return added;
+	}
+
+	@JsonProperty
+	public String getRemoved() {
+		return removed;
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param seq sequence number
+	 * @param time timestamp in milliseconds
+	 * @param op operation
+	 * @param subject deleted subject or null
+	 * @param graph deleted graph or null
+	 * @param added statements added or null
+	 * @param removed statements removed or null
+	 */
+	@JsonCreator
+	public Change(@JsonProperty("seq") long seq, @JsonProperty("time") long time,
+				@JsonProperty("op") String op, @JsonProperty("subject") String subject,
+				@JsonProperty("graph") String graph, @JsonProperty("added") String added,
+				@JsonProperty("removed") String removed) {
+		this.seq = seq;
+		this.time = time;
+		this.op = op;
+		this.subject = subject;
+		this.graph = graph;
+		this.added = added;
+		this.removed = removed;
+	}
+}
@@ -0,0 +1,534 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.belgif.link.helpers;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.ByteStreams;
+
+import io.dropwizard.lifecycle.Managed;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
+
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only log of the updates of the store, numbered by sequence.
+ *
+ * Each change is written as one line of JSON to a segment file, named after
+ * the sequence number of its first change. A new segment is started when the
+ * current one is full. Segments older than the retention period are deleted
+ * on a schedule, so changes also expire when there are no new changes.
+ * Consumers read the changes from a sequence number onwards, waiting for new
+ * changes if they are up to date (long-polling).
+ *
+ * @author Bart.Hanssens
+ */
+public class ChangeLog implements Managed {
+	private final static Logger LOG = LoggerFactory.getLogger(ChangeLog.class);
+
+	private final static String SUFFIX = ".log";
+	// random identity of the log, a new log gets a new identity
+	private final static String ID_FILE = "log.id";
+	private final static String PREFIX = "{\"seq\":";
+	// keep the position of every n-th change, to avoid reading a segment from the start
+	private final static int INDEX_EVERY = 64;
+	// maximum time between checks for expired segments
+	private final static long EXPIRE_EVERY = TimeUnit.HOURS.toMillis(1);
+
+	private final File dir;
+	private final long segmentSize;
+	private final long retention;
+	private final ObjectMapper mapper;
+	private final ScheduledExecutorService exec;
+
+	// first sequence number of each segment
+	private final NavigableMap<Long, File> segments = new TreeMap<>();
+	// byte offset of a sequence number in its segment
+	private final NavigableMap<Long, Long> offsets = new TreeMap<>();
+	private final Set<Waiter> waiters = ConcurrentHashMap.newKeySet();
+
+	private volatile String id;
+	private OutputStream out;
+	private long written = 0;
+	private long next = 1;
+
+	/**
+	 * Consumer waiting for new changes
+	 */
+	private static class Waiter {
+		private final long from;
+		private final int limit;
+		private final UriBuilder uri;
+		private final AsyncResponse resp;
+
+		Waiter(long from, int limit, UriBuilder uri, AsyncResponse resp) {
+			this.from = from;
+			this.limit = limit;
+			this.uri = uri;
+			this.resp = resp;
+		}
+	}
+
+	/**
+	 * Get the sequence number of a line
+	 *
+	 * @param line line in a segment
+	 * @return sequence number
+	 */
+	private static long seq(String line) {
+		return Long.parseLong(line.substring(PREFIX.length(), line.indexOf(',')));
+	}
+
+	/**
+	 * Write statements as N-Quads
+	 *
+	 * @param m triples or null
+	 * @return string or null if there are no triples
+	 */
+	private static String nquads(Model m) {
+		if (m == null || m.isEmpty()) {
+			return null;
+		}
+		StringWriter w = new StringWriter();
+		Rio.write(m, w, RDFFormat.NQUADS);
+		return w.toString();
+	}
+
+	/**
+	 * Get the file of a segment
+	 *
+	 * @param first sequence number of the first change in the segment
+	 * @return file
+	 */
+	private File segment(long first) {
+		return new File(dir, String.format("%020d%s", first, SUFFIX));
+	}
+
+	/**
+	 * Start a new segment, and delete the segments older than the retention period
+	 *
+	 * @throws IOException
+	 */
+	private void roll() throws IOException {
+		if (out != null) {
+			out.close();
+		}
+		File f = segment(next);
+		segments.put(next, f);
+		out = new FileOutputStream(f, true);
+		written = 0;
+		deleteExpired();
+	}
+
+	/**
+	 * Delete the segments older than the retention period, except the current one
+	 */
+	private void deleteExpired() {
+		long expired = System.currentTimeMillis() - retention;
+		Iterator<Map.Entry<Long, File>> it = segments.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Long, File> e = it.next();
+			if (e.getKey() == next || e.getValue().lastModified() > expired) {
+				break;
+			}
+			Long upto = segments.higherKey(e.getKey());
+			offsets.headMap(upto).clear();
+			it.remove();
+			if (!e.getValue().delete()) {
+				LOG.warn("Could not delete segment {}", e.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Read a segment to rebuild the index, and cut off a line that was not
+	 * completely written
+	 *
+	 * @param first sequence number of the first change
+	 * @param f segment file
+	 * @throws IOException
+	 */
+	private void scan(long first, File f) throws IOException {
+		long offset = 0;
+		long length = f.length();
+		try (BufferedReader r = new BufferedReader(
+						new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = r.readLine()) != null) {
+				long end = offset + line.getBytes(StandardCharsets.UTF_8).length + 1;
+				// last line without newline
+				if (end > length) {
+					break;
+				}
+				long seq;
+				try {
+					seq = seq(line);
+				} catch (RuntimeException e) {
+					break;
+				}
+				if ((seq - first) % INDEX_EVERY == 0) {
+					offsets.put(seq, offset);
+				}
+				offset = end;
+				next = seq + 1;
+			}
+		}
+		if (offset < length) {
+			LOG.warn("Truncating incomplete change in {}", f);
+			try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+				raf.setLength(offset);
+			}
+		}
+		written = offset;
+	}
+
+	/**
+	 * Delete the segments older than the retention period. When the current
+	 * segment expired as well, a new segment is started first.
+	 */
+	public synchronized void expire() {
+		if (out == null) {
+			return;
+		}
+		try {
+			if (written > 0 && segments.lastEntry().getValue().lastModified()
+										< System.currentTimeMillis() - retention) {
+				roll();
+			} else {
+				deleteExpired();
+			}
+		} catch (IOException ioe) {
+			LOG.error("Could not start new segment", ioe);
+		}
+	}
+
+	/**
+	 * Get the identity of the log, so the same sequence number in another log
+	 * (e.g. after the directory was wiped, or on another node) can be told apart
+	 *
+	 * @return identity
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * Read the identity of the log, or create one for a new log
+	 *
+	 * @return identity
+	 * @throws IOException
+	 */
+	private String readId() throws IOException {
+		File f = new File(dir, ID_FILE);
+		if (f.exists()) {
+			return new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8).trim();
+		}
+		if (!segments.isEmpty()) {
+			LOG.warn("No identity for existing change log, creating one");
+		}
+		String uuid = UUID.randomUUID().toString();
+		Files.write(f.toPath(), uuid.getBytes(StandardCharsets.UTF_8));
+		return uuid;
+	}
+
+	/**
+	 * Get the sequence number of the oldest change still available
+	 *
+	 * @return sequence number
+	 */
+	public synchronized long getFirst() {
+		return segments.isEmpty() ? next : segments.firstKey();
+	}
+
+	/**
+	 * Get the sequence number of the next change
+	 *
+	 * @return sequence number
+	 */
+	public synchronized long getNext() {
+		return next;
+	}
+
+	/**
+	 * Record a change
+	 *
+	 * @param op operation (add, replace, diff, delete, import)
+	 * @param subj deleted subject or null
+	 * @param graph deleted graph or null
+	 * @param added statements added or null
+	 * @param removed statements removed or null
+	 * @return sequence number
+	 */
+	public long append(String op, Resource subj, Resource graph, Model added, Model removed) {
+		long seq;
+		synchronized (this) {
+			seq = next;
+			Change c = new Change(seq, System.currentTimeMillis(), op,
+								(subj != null) ? subj.stringValue() : null,
+								(graph != null) ? graph.stringValue() : null,
+								nquads(added), nquads(removed));
+			try {
+				if (written >= segmentSize) {
+					roll();
+				}
+				byte[] line = (mapper.writeValueAsString(c) + "\n").getBytes(StandardCharsets.UTF_8);
+				out.write(line);
+				out.flush();
+				if ((seq - segments.lastKey()) % INDEX_EVERY == 0) {
+					offsets.put(seq, written);
+				}
+				written += line.length;
+				next++;
+			} catch (IOException ioe) {
+				LOG.error("Could not write change {}", seq);
+				throw new WebApplicationException(ioe);
+			}
+		}
+		for (Waiter w: waiters) {
+			if (waiters.remove(w)) {
+				resume(w.resp, w.from, w.limit, w.uri);
+			}
+		}
+		return seq;
+	}
+
+	/**
+	 * Read changes, as lines of JSON
+	 *
+	 * @param from sequence number of the first change
+	 * @param limit maximum number of changes
+	 * @return list of lines
+	 */
+	private synchronized List<String> read(long from, int limit) {
+		Map.Entry<Long, Long> pos = offsets.floorEntry(from);
+		if (pos == null || from >= next) {
+			return Collections.emptyList();
+		}
+		List<String> lines = new ArrayList<>(limit);
+		Map.Entry<Long, File> seg = segments.floorEntry(pos.getKey());
+		long offset = pos.getValue();
+
+		while (seg != null && lines.size() < limit) {
+			try (InputStream in = new FileInputStream(seg.getValue())) {
+				ByteStreams.skipFully(in, offset);
+				BufferedReader r = new BufferedReader(
+										new InputStreamReader(in, StandardCharsets.UTF_8));
+				String line;
+				while (lines.size() < limit && (line = r.readLine()) != null) {
+					if (seq(line) >= from) {
+						lines.add(line);
+					}
+				}
+			} catch (IOException ioe) {
+				throw new WebApplicationException(ioe);
+			}
+			seg = segments.higherEntry(seg.getKey());
+			offset = 0;
+		}
+		return lines;
+	}
+
+	/**
+	 * Read all changes still available, e.g. to rebuild state at startup
+	 *
+	 * @param consumer consumer of the changes, in order of sequence
+	 */
+	public synchronized void replay(Consumer<Change> consumer) {
+		long seq = getFirst();
+		while (seq < next) {
+			List<String> lines = read(seq, 10_000);
+			if (lines.isEmpty()) {
+				break;
+			}
+			for (String line: lines) {
+				try {
+					consumer.accept(mapper.readValue(line, Change.class));
+				} catch (IOException ioe) {
+					throw new WebApplicationException(ioe);
+				}
+			}
+			seq += lines.size();
+		}
+	}
+
+	/**
+	 * Build a response with a JSON array of changes, and a link to the next changes
+	 *
+	 * @param from sequence number of the first change
+	 * @param limit maximum number of changes
+	 * @param uri request URI
+	 * @return response
+	 */
+	private Response response(long from, int limit, UriBuilder uri) {
+		if (from < getFirst()) {
+			throw new WebApplicationException("Changes no longer available",
+												Response.Status.GONE);
+		}
+		List<String> lines = read(from, limit);
+		// sequence numbers have no gaps
+		long after = from + lines.size();
+		return Response.ok("[" + String.join(",", lines) + "]", MediaType.APPLICATION_JSON_TYPE)
+						.link(uri.replaceQueryParam("from", after).build(), "next")
+						.build();
+	}
+
+	/**
+	 * Resume a suspended response with the changes, or with the error
+	 *
+	 * @param resp suspended response
+	 * @param from sequence number of the first change
+	 * @param limit maximum number of changes
+	 * @param uri request URI
+	 */
+	private void resume(AsyncResponse resp, long from, int limit, UriBuilder uri) {
+		try {
+			resp.resume(response(from, limit, uri));
+		} catch (WebApplicationException wae) {
+			resp.resume(wae);
+		}
+	}
+
+	/**
+	 * Get the changes from a sequence number onwards, or wait for new changes
+	 * when there are none yet
+	 *
+	 * @param from sequence number of the first change
+	 * @param limit maximum number of changes
+	 * @param wait maximum time to wait in milliseconds
+	 * @param uri request URI, for the link to the next changes
+	 * @param resp suspended response
+	 */
+	public void poll(long from, int limit, long wait, UriBuilder uri, AsyncResponse resp) {
+		synchronized (this) {
+			if (wait > 0 && from >= next) {
+				Waiter w = new Waiter(from, limit, uri, resp);
+				resp.setTimeout(wait, TimeUnit.MILLISECONDS);
+				resp.setTimeoutHandler(r -> {
+					if (waiters.remove(w)) {
+						resume(r, from, limit, uri);
+					}
+				});
+				waiters.add(w);
+				return;
+			}
+		}
+		resume(resp, from, limit, uri);
+	}
+
+	@Override
+	public synchronized void start() throws Exception {
+		if (!dir.exists() && !dir.mkdirs()) {
+			throw new IOException("Could not create directory " + dir);
+		}
+		File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+		for (File f: files) {
+			String name = f.getName();
+			segments.put(Long.valueOf(name.substring(0, name.length() - SUFFIX.length())), f);
+		}
+		for (Map.Entry<Long, File> e: segments.entrySet()) {
+			next = Math.max(next, e.getKey());
+			scan(e.getKey(), e.getValue());
+		}
+		id = readId();
+		if (segments.isEmpty()) {
+			roll();
+		} else {
+			out = new FileOutputStream(segments.lastEntry().getValue(), true);
+		}
+		LOG.info("Change log from {} to {} in {} segments", getFirst(), next - 1, segments.size());
+		long every = Math.max(1, Math.min(retention, EXPIRE_EVERY));
+		exec.scheduleWithFixedDelay(this::expire, every, every, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public synchronized void stop() throws Exception {
+		if (out != null) {
+			out.close();
+			out = null;
+		}
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param dir directory of the segment files
+	 * @param segmentSize maximum size of a segment in bytes
+	 * @param retention time to keep segments in milliseconds
+	 * @param exec scheduled executor, to delete expired segments
+	 * @param mapper JSON object mapper
+	 * @param metrics metric registry
+	 */
+	public ChangeLog(File dir, long segmentSize, long retention, ScheduledExecutorService exec,
+										ObjectMapper mapper, MetricRegistry metrics) {
+		this.dir = dir;
+		this.segmentSize = segmentSize;
+		this.retention = retention;
+		this.exec = exec;
+		this.mapper = mapper;
+		metrics.register(MetricRegistry.name(ChangeLog.class, "sequence"),
+							(Gauge<Long>) this::getNext);
+		metrics.register(MetricRegistry.name(ChangeLog.class, "waiting"),
+							(Gauge<Integer>) waiters::size);
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.belgif.link.helpers;
+
+import com.codahale.metrics.Meter;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.ServiceUnavailableException;
+
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.eclipse.rdf4j.repository.base.RepositoryWrapper;
+
+/**
+ * Fails fast instead of waiting for the triple store while the store monitor
+ * considers the store to be down.
+ * Requests answered from the cache or the in-memory indexes are not affected.
+ *
+ * @author Bart.Hanssens
+ */
+public class CircuitBreakerRepository extends RepositoryWrapper {
+	private final StoreMonitor monitor;
+	private final Meter rejected;
+
+	@Override
+	public RepositoryConnection getConnection() throws RepositoryException {
+		if (!monitor.isAvailable()) {
+			rejected.mark();
+			long retry = Math.max(1, TimeUnit.MILLISECONDS.toSeconds(monitor.getInterval()));
+			throw new ServiceUnavailableException("Triple store unavailable", retry);
+		}
+		return super.getConnection();
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param repo RDF store
+	 * @param monitor store monitor
+	 * @param rejected meter for requests rejected while the store is down
+	 */
+	public CircuitBreakerRepository(Repository repo, StoreMonitor monitor, Meter rejected) {
+		super(repo);
+		this.monitor = monitor;
+		this.rejected = rejected;
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.belgif.link.helpers;
+
+import com.codahale.metrics.Meter;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+import javax.ws.rs.WebApplicationException;
+
+/**
+ * Single-flight execution: concurrent calls with the same key share the result
+ * of the call that is already in progress, instead of each querying the store.
+ * Nothing is kept once the call is done.
+ *
+ * @author Bart.Hanssens
+ * @param <K> type of the key
+ * @param <V> type of the result
+ */
+public class Coalescer<K, V> {
+	private final ConcurrentMap<K, CompletableFuture<V>> inflight = new ConcurrentHashMap<>();
+	private final Meter coalesced;
+
+	/**
+	 * Get the result of the call in progress for this key, or call the loader
+	 *
+	 * @param key key
+	 * @param loader loader
+	 * @return result
+	 */
+	public V get(K key, Supplier<V> loader) {
+		CompletableFuture<V> f = new CompletableFuture<>();
+		CompletableFuture<V> prev = inflight.putIfAbsent(key, f);
+		if (prev != null) {
+			coalesced.mark();
+			try {
+				return prev.join();
+			} catch (CompletionException ce) {
+				Throwable t = ce.getCause();
+				if (t instanceof Error) {
+					throw (Error) t;
+				}
+				throw (t instanceof RuntimeException) ? (RuntimeException) t
+														: new WebApplicationException(t);
+			}
+		}
+		try {
+			V v = loader.get();
+			f.complete(v);
+			return v;
+		} catch (Throwable t) {
+			// also on errors, otherwise the other calls would wait forever
+			f.completeExceptionally(t);
+			throw t;
+		} finally {
+			inflight.remove(key, f);
+		}
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param coalesced meter for calls sharing the result of another call
+	 */
+	public Coalescer(Meter coalesced) {
+		this.coalesced = coalesced;
+	}
+}
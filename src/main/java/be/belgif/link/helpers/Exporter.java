@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.belgif.link.helpers;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+import java.util.concurrent.Semaphore;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.rio.RDFHandler;
+
+/**
+ * Full export of the store, limited in number of concurrent exports and
+ * in statements per second, so a dump does not starve the other requests.
+ *
+ * @author Bart.Hanssens
+ */
+public class Exporter {
+	private final Repository repo;
+	private final Semaphore running;
+	private final RateLimiter limiter;
+	private final int checkpoint;
+
+	/**
+	 * Get a lazy source of all statements, only retrieved when written
+	 *
+	 * @param graph graph IRI or null for all graphs
+	 * @param from number of statements to skip
+	 * @return statement source
+	 */
+	public StatementSource source(Resource graph, long from) {
+		return new StatementSource(repo, (IRI) null, graph) {
+			@Override
+			public long writeTo(RDFHandler handler) {
+				// nothing has been written yet, so the status can still be set
+				if (!running.tryAcquire()) {
+					throw new WebApplicationException("Too many exports", 
+										Response.Status.SERVICE_UNAVAILABLE);
+				}
+				try {
+					return QueryHelper.exportAll(repo, graph, from, checkpoint, limiter, handler);
+				} finally {
+					running.release();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param repo RDF store
+	 * @param threads maximum number of concurrent exports
+	 * @param rate maximum number of statements per second, 0 for unlimited
+	 * @param checkpoint number of statements between checkpoints
+	 */
+	public Exporter(Repository repo, int threads, double rate, int checkpoint) {
+		this.repo = repo;
+		this.running = new Semaphore(threads);
+		this.limiter = (rate > 0) ? RateLimiter.create(rate) : null;
+		this.checkpoint = checkpoint;
+	}
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.belgif.link.helpers;
+
+import io.dropwizard.lifecycle.Managed;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Collectors;
+
+import javax.ws.rs.WebApplicationException;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory index of the subjects in each graph, sorted by IRI,
+ * built at startup and updated after each change.
+ *
+ * A page of subjects can be found without sorting all subjects in the graph.
+ *
+ * @author Bart.Hanssens
+ */
+public class GraphIndex implements Managed, ChangeListener {
+	private final static Logger LOG = LoggerFactory.getLogger(GraphIndex.class);
+
+	private final static String Q_ALL
+			= "SELECT DISTINCT ?g ?s "
+			+ " WHERE { GRAPH ?g { ?s ?p ?o } "
+			+ " FILTER (isIRI(?s)) } ";
+
+	private final Repository repo;
+	private volatile Map<Resource, NavigableSet<String>> index = new ConcurrentHashMap<>();
+	private volatile boolean ready = false;
+
+	/**
+	 * Check if the index was successfully built
+	 *
+	 * @return true if ready to be used
+	 */
+	public boolean isReady() {
+		return ready;
+	}
+
+	/**
+	 * Get a page of subjects in a graph, sorted by IRI
+	 *
+	 * @param graph graph IRI
+	 * @param after only subjects sorting after this IRI, or null for the first page
+	 * @param limit maximum number of subjects
+	 * @return list of subjects
+	 */
+	public List<IRI> get(Resource graph, String after, int limit) {
+		NavigableSet<String> subjs = index.get(graph);
+		if (subjs == null) {
+			return Collections.emptyList();
+		}
+		if (after != null) {
+			subjs = subjs.tailSet(after, false);
+		}
+		return subjs.stream().limit(limit).map(QueryHelper::asURI).collect(Collectors.toList());
+	}
+
+	/**
+	 * Read all subjects and their graphs from a store
+	 *
+	 * @param shard store or shard
+	 * @param idx subjects by graph
+	 */
+	private static void rebuild(Repository shard, Map<Resource, NavigableSet<String>> idx) {
+		try (RepositoryConnection conn = shard.getConnection();
+			TupleQueryResult res = conn.prepareTupleQuery(QueryLanguage.SPARQL, Q_ALL).evaluate()) {
+			while (res.hasNext()) {
+				BindingSet bs = res.next();
+				idx.computeIfAbsent((Resource) bs.getValue("g"), k -> new ConcurrentSkipListSet<>())
+					.add(bs.getValue("s").stringValue());
+			}
+		} catch (RepositoryException e) {
+			throw new WebApplicationException(e);
+		}
+	}
+
+	/**
+	 * Rebuild the whole index from the store, or from each shard of a partitioned store
+	 *
+	 * @return number of indexed graphs
+	 */
+	public synchronized int rebuild() {
+		Map<Resource, NavigableSet<String>> idx = new ConcurrentHashMap<>();
+
+		long start = System.currentTimeMillis();
+		for (Repository shard: PartitionedRepository.shards(repo)) {
+			rebuild(shard, idx);
+		}
+
+		index = idx;
+		ready = true;
+		LOG.info("Indexed subjects of {} graphs in {} ms", idx.size(),
+												System.currentTimeMillis() - start);
+		return idx.size();
+	}
+
+	/**
+	 * Check if a subject is still in a graph, and update the index
+	 *
+	 * @param conn connection to the store or the shard of the graph
+	 * @param subj subject
+	 * @param graph graph
+	 */
+	private void reindex(RepositoryConnection conn, Resource subj, Resource graph) {
+		if (conn.hasStatement(subj, null, null, false, graph)) {
+			index.computeIfAbsent(graph, k -> new ConcurrentSkipListSet<>()).add(subj.stringValue());
+		} else {
+			NavigableSet<String> subjs = index.get(graph);
+			if (subjs != null) {
+				subjs.remove(subj.stringValue());
+			}
+		}
+	}
+
+	/**
+	 * Read the subjects of named graphs in a model from the store and update the index
+	 *
+	 * @param m triples that were added or removed
+	 */
+	private synchronized void reindex(Model m) {
+		Map<Repository, RepositoryConnection> conns = new HashMap<>();
+		try {
+			for (Resource graph: m.contexts()) {
+				if (graph == null) {
+					continue;
+				}
+				RepositoryConnection conn = conns.computeIfAbsent(
+						PartitionedRepository.route(repo, graph), Repository::getConnection);
+				for (Resource subj: m.filter(null, null, null, graph).subjects()) {
+					if (subj instanceof IRI) {
+						reindex(conn, subj, graph);
+					}
+				}
+			}
+		} catch (RepositoryException e) {
+			LOG.error("Could not update graph index", e);
+			ready = false;
+		} finally {
+			conns.values().forEach(RepositoryConnection::close);
+		}
+	}
+
+	@Override
+	public void added(Model m) {
+		reindex(m);
+	}
+
+	@Override
+	public void deleted(IRI subj, Resource graph) {
+		// deleting a subject only deletes it from the default graph
+		if (graph != null) {
+			index.remove(graph);
+		}
+	}
+
+	@Override
+	public void reset() {
+		try {
+			rebuild();
+		} catch (WebApplicationException e) {
+			LOG.error("Could not rebuild graph index", e);
+			ready = false;
+		}
+	}
+
+	@Override
+	public void start() throws Exception {
+		reset();
+	}
+
+	@Override
+	public void stop() throws Exception {
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param repo RDF store
+	 */
+	public GraphIndex(Repository repo) {
+		this.repo = repo;
+	}
+}
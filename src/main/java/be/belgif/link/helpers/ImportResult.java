@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.belgif.link.helpers;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Summary of a bulk import
+ *
+ * @author Bart.Hanssens
+ */
+public class ImportResult {
+	private final long statements;
+	private final long batches;
+	private final long millis;
+
+	@JsonProperty
+	public long getStatements() {
+		return statements;
+	}
+
+	@JsonProperty
+	public long getBatches() {
+		return batches;
+	}
+
+	@JsonProperty
+	public long getMillis() {
+		return millis;
+	}
+
+	@JsonProperty
+	public long getStatementsPerSecond() {
+		return (millis > 0) ? statements * 1000 / millis : statements;
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param statements number of statements imported
+	 * @param batches number of transactions
+	 * @param millis duration in milliseconds
+	 */
+	public ImportResult(long statements, long batches, long millis) {
+		this.statements = statements;
+		this.batches = batches;
+		this.millis = millis;
+	}
+}
@@ -0,0 +1,323 @@
+package be.belgif.link.helpers;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.ws.rs.WebApplicationException;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.rio.RDFFormat;
+
+/**
+ * Read-through cache for subject and graph lookups, both as triples and
+ * as serialized bytes per RDF format.
+ *
+ * Each invalidation increases a generation number. Values loaded while an
+ * invalidation took place are not kept, since they may have been read from the
+ * store before the update was committed.
+ *
+ * @author Bart.Hanssens
+ */
+public class LinkCache implements ChangeListener {
+	private final Cache<Key, Entry<Model>> cache;
+	private final Cache<Key, Entry<SerializedModel>> serialized;
+	private final AtomicLong generation = new AtomicLong();
+
+	/**
+	 * Cache key: subject and / or graph, and RDF format (if serialized)
+	 */
+	private static class Key {
+		private final Resource subj;
+		private final Resource graph;
+		private final RDFFormat fmt;
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key k = (Key) o;
+			return Objects.equals(subj, k.subj) && Objects.equals(graph, k.graph)
+												&& Objects.equals(fmt, k.fmt);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(subj, graph, fmt);
+		}
+
+		Key(Resource subj, Resource graph, RDFFormat fmt) {
+			this.subj = subj;
+			this.graph = graph;
+			this.fmt = fmt;
+		}
+	}
+
+	/**
+	 * Cached value, with the generation at the start of the load
+	 *
+	 * @param <V> type of the value
+	 */
+	private static class Entry<V> {
+		private final long gen;
+		private final V value;
+		private volatile boolean checked = false;
+
+		Entry(long gen, V value) {
+			this.gen = gen;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * Check if a cached value is still valid: there was no invalidation between
+	 * the start of the load and the moment the value was checked for the first time.
+	 * Invalid values are removed from the cache.
+	 *
+	 * @param <V> type of the value
+	 * @param c cache
+	 * @param k key
+	 * @param e cached entry
+	 * @return true if valid
+	 */
+	private <V> boolean check(Cache<Key, Entry<V>> c, Key k, Entry<V> e) {
+		if (!e.checked) {
+			if (e.gen != generation.get()) {
+				c.asMap().remove(k, e);
+				return false;
+			}
+			e.checked = true;
+		}
+		return true;
+	}
+
+	/**
+	 * Call the loader, without caching
+	 *
+	 * @param <V> type of the value
+	 * @param loader loader
+	 * @return value
+	 */
+	private static <V> V call(Callable<V> loader) {
+		try {
+			return loader.call();
+		} catch (WebApplicationException wae) {
+			throw wae;
+		} catch (Exception e) {
+			throw new WebApplicationException(e);
+		}
+	}
+
+	/**
+	 * Get value from a cache, loading it if needed.
+	 * A value loaded while an invalidation took place is loaded again, without
+	 * caching it.
+	 *
+	 * @param <V> type of the value
+	 * @param c cache
+	 * @param k key
+	 * @param loader loader
+	 * @return value
+	 */
+	private <V> V load(Cache<Key, Entry<V>> c, Key k, Callable<V> loader) {
+		Entry<V> e;
+		try {
+			// generation must be read before loading
+			e = c.get(k, () -> {
+				long gen = generation.get();
+				return new Entry<>(gen, loader.call());
+			});
+		} catch (ExecutionException | UncheckedExecutionException ex) {
+			Throwables.propagateIfInstanceOf(ex.getCause(), WebApplicationException.class);
+			throw new WebApplicationException(ex.getCause());
+		}
+		return check(c, k, e) ? e.value : call(loader);
+	}
+
+	/**
+	 * Get all triples by subject, from the cache or from the store
+	 *
+	 * @param repo RDF store
+	 * @param subj subject IRI or null
+	 * @param graph graph IRI or null
+	 * @return all triples (read-only)
+	 */
+	public Model get(Repository repo, IRI subj, Resource graph) {
+		return load(cache, new Key(subj, graph, null),
+					() -> QueryHelper.get(repo, subj, graph).unmodifiable());
+	}
+
+	/**
+	 * Get all triples of multiple subjects in the default graph.
+	 * Subjects that are not in the cache are retrieved in one query, and cached.
+	 *
+	 * @param repo RDF store
+	 * @param subjs subject IRIs
+	 * @return all triples
+	 */
+	public Model get(Repository repo, Collection<IRI> subjs) {
+		Model m = new LinkedHashModel();
+		List<IRI> missing = new ArrayList<>();
+
+		for (IRI subj: subjs) {
+			Key k = new Key(subj, null, null);
+			Entry<Model> cached = cache.getIfPresent(k);
+			if (cached != null && check(cache, k, cached)) {
+				m.addAll(cached.value);
+			} else {
+				missing.add(subj);
+			}
+		}
+		if (!missing.isEmpty()) {
+			long gen = generation.get();
+			Model res = QueryHelper.get(repo, missing);
+			for (IRI subj: missing) {
+				Model part = QueryHelper.setNamespaces(
+									new LinkedHashModel(res.filter(subj, null, null)));
+				cache.put(new Key(subj, null, null), new Entry<>(gen, part.unmodifiable()));
+			}
+			m.addAll(res);
+		}
+		return QueryHelper.setNamespaces(m);
+	}
+
+	/**
+	 * Get all triples by subject, serialized in a given format
+	 *
+	 * @param repo RDF store
+	 * @param subj subject IRI or null
+	 * @param graph graph IRI or null
+	 * @param fmt RDF format
+	 * @return serialized triples
+	 */
+	public SerializedModel get(Repository repo, IRI subj, Resource graph, RDFFormat fmt) {
+		return load(serialized, new Key(subj, graph, fmt),
+					() -> SerializedModel.serialize(get(repo, subj, graph), fmt));
+	}
+
+	/**
+	 * Invalidate all entries about the subjects and graphs in a model
+	 *
+	 * @param m triples that were added or removed
+	 */
+	public void invalidate(Model m) {
+		Set<Resource> subjs = m.subjects();
+		Set<Resource> graphs = m.contexts();
+
+		generation.incrementAndGet();
+		cache.asMap().keySet().removeIf(k -> subjs.contains(k.subj)
+									|| (k.graph != null && graphs.contains(k.graph)));
+		serialized.asMap().keySet().removeIf(k -> subjs.contains(k.subj)
+									|| (k.graph != null && graphs.contains(k.graph)));
+	}
+
+	/**
+	 * Invalidate all entries about a subject or graph
+	 *
+	 * @param subj subject or null
+	 * @param graph graph or null
+	 */
+	public void invalidate(IRI subj, Resource graph) {
+		generation.incrementAndGet();
+		if (subj != null) {
+			cache.asMap().keySet().removeIf(k -> subj.equals(k.subj));
+			serialized.asMap().keySet().removeIf(k -> subj.equals(k.subj));
+		}
+		if (graph != null) {
+			// subject lookups only return triples in the default graph
+			cache.asMap().keySet().removeIf(k -> graph.equals(k.graph));
+			serialized.asMap().keySet().removeIf(k -> graph.equals(k.graph));
+		}
+	}
+
+	/**
+	 * Invalidate all entries
+	 */
+	public void invalidateAll() {
+		generation.incrementAndGet();
+		cache.invalidateAll();
+		serialized.invalidateAll();
+	}
+
+	@Override
+	public void added(Model m) {
+		invalidate(m);
+	}
+
+	@Override
+	public void deleted(IRI subj, Resource graph) {
+		invalidate(subj, graph);
+	}
+
+	@Override
+	public void reset() {
+		invalidateAll();
+	}
+
+	/**
+	 * Register hit / miss / eviction gauges for a cache.
+	 * Concurrent lookups of the same key wait for the one loading it,
+	 * these are counted as misses without a load.
+	 *
+	 * @param metrics metric registry
+	 * @param c cache
+	 * @param prefix metric name prefix
+	 */
+	private static void register(MetricRegistry metrics, Cache<?, ?> c, String prefix) {
+		metrics.register(MetricRegistry.name(LinkCache.class, prefix, "hits"),
+						(Gauge<Long>) () -> c.stats().hitCount());
+		metrics.register(MetricRegistry.name(LinkCache.class, prefix, "misses"),
+						(Gauge<Long>) () -> c.stats().missCount());
+		metrics.register(MetricRegistry.name(LinkCache.class, prefix, "coalesced"),
+						(Gauge<Long>) () -> c.stats().missCount() - c.stats().loadCount());
+		metrics.register(MetricRegistry.name(LinkCache.class, prefix, "evictions"),
+						(Gauge<Long>) () -> c.stats().evictionCount());
+		metrics.register(MetricRegistry.name(LinkCache.class, prefix, "size"),
+						(Gauge<Long>) () -> c.size());
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param size maximum number of cached statements
+	 * @param bytes maximum number of cached serialized bytes
+	 * @param ttl time-to-live in seconds
+	 * @param metrics metric registry
+	 */
+	public LinkCache(long size, long bytes, long ttl, MetricRegistry metrics) {
+		this.cache = CacheBuilder.newBuilder()
+								.maximumWeight(size)
+								.weigher((Key k, Entry<Model> e) -> e.value.size() + 1)
+								.expireAfterWrite(ttl, TimeUnit.SECONDS)
+								.recordStats()
+								.build();
+		this.serialized = CacheBuilder.newBuilder()
+								.maximumWeight(bytes)
+								.weigher((Key k, Entry<SerializedModel> e) -> e.value.getBytes().length + 1)
+								.expireAfterWrite(ttl, TimeUnit.SECONDS)
+								.recordStats()
+								.build();
+
+		register(metrics, cache, "triples");
+		register(metrics, serialized, "serialized");
+	}
+}
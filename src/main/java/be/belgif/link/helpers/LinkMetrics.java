@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.belgif.link.helpers;
+
+import com.codahale.metrics.MetricRegistry;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.rdf4j.rio.RDFFormat;
+
+/**
+ * Metrics shared by the static helpers and the message body writers.
+ * Until the application registers its own registry, a private one is used.
+ *
+ * @author Bart.Hanssens
+ */
+public class LinkMetrics {
+	private static volatile MetricRegistry metrics = new MetricRegistry();
+	private static volatile long slowQuery = TimeUnit.SECONDS.toNanos(1);
+
+	/**
+	 * Use the metric registry of the application
+	 *
+	 * @param registry metric registry
+	 * @param slowQueryMillis log queries taking longer than this number of milliseconds
+	 */
+	public static void register(MetricRegistry registry, long slowQueryMillis) {
+		metrics = registry;
+		slowQuery = TimeUnit.MILLISECONDS.toNanos(slowQueryMillis);
+	}
+
+	/**
+	 * Get the metric registry
+	 *
+	 * @return metric registry
+	 */
+	public static MetricRegistry getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Get the threshold for slow queries
+	 *
+	 * @return duration in nanoseconds
+	 */
+	public static long getSlowQuery() {
+		return slowQuery;
+	}
+
+	/**
+	 * Record the time needed to serialize triples
+	 *
+	 * @param fmt RDF format
+	 * @param nanos duration in nanoseconds
+	 */
+	public static void serialized(RDFFormat fmt, long nanos) {
+		metrics.timer(MetricRegistry.name(RDFMessageBodyWriter.class,
+							fmt.getDefaultFileExtension(), "serialize"))
+				.update(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Record the size of a response
+	 *
+	 * @param fmt RDF format
+	 * @param bytes number of bytes
+	 * @param statements number of statements
+	 */
+	public static void response(RDFFormat fmt, long bytes, long statements) {
+		String ext = fmt.getDefaultFileExtension();
+		metrics.histogram(MetricRegistry.name(RDFMessageBodyWriter.class, ext, "bytes"))
+				.update(bytes);
+		metrics.histogram(MetricRegistry.name(RDFMessageBodyWriter.class, ext, "statements"))
+				.update(statements);
+	}
+}
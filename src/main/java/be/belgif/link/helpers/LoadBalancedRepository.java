@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.belgif.link.helpers;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.eclipse.rdf4j.repository.base.RepositoryConnectionWrapper;
+import org.eclipse.rdf4j.repository.base.RepositoryWrapper;
+
+/**
+ * Spreads read connections over read replicas of the store, choosing the replica
+ * with the least connections in use. Replicas are skipped while their monitor
+ * considers them down, the primary store is used when no replica is available.
+ *
+ * @author Bart.Hanssens
+ */
+public class LoadBalancedRepository extends RepositoryWrapper {
+	private final List<Replica> replicas = new CopyOnWriteArrayList<>();
+	private final AtomicInteger next = new AtomicInteger();
+	private final MetricRegistry metrics;
+	private final Meter fallback;
+
+	/**
+	 * Read replica with its monitor and number of connections in use
+	 */
+	private static class Replica {
+		private final Repository repo;
+		private final StoreMonitor monitor;
+		private final AtomicInteger outstanding = new AtomicInteger();
+
+		/**
+		 * Get a connection, counted until it is closed
+		 *
+		 * @return connection
+		 */
+		private RepositoryConnection connect() {
+			outstanding.incrementAndGet();
+			RepositoryConnection conn;
+			try {
+				conn = repo.getConnection();
+			} catch (RuntimeException e) {
+				outstanding.decrementAndGet();
+				throw e;
+			}
+			AtomicBoolean closed = new AtomicBoolean();
+			return new RepositoryConnectionWrapper(repo, conn) {
+				@Override
+				public void close() throws RepositoryException {
+					try {
+						super.close();
+					} finally {
+						if (closed.compareAndSet(false, true)) {
+							outstanding.decrementAndGet();
+						}
+					}
+				}
+			};
+		}
+
+		Replica(Repository repo, StoreMonitor monitor) {
+			this.repo = repo;
+			this.monitor = monitor;
+		}
+	}
+
+	/**
+	 * Add a read replica
+	 *
+	 * @param name name of the replica, for metrics
+	 * @param repo RDF store
+	 * @param monitor monitor of the replica
+	 */
+	public void add(String name, Repository repo, StoreMonitor monitor) {
+		Replica r = new Replica(repo, monitor);
+		replicas.add(r);
+		metrics.register(MetricRegistry.name(LoadBalancedRepository.class, name, "outstanding"),
+							(Gauge<Integer>) r.outstanding::get);
+	}
+
+	@Override
+	public RepositoryConnection getConnection() throws RepositoryException {
+		int size = replicas.size();
+		// rotate the starting point, so replicas with the same load take turns
+		int start = next.getAndIncrement();
+
+		Replica best = null;
+		for (int i = 0; i < size; i++) {
+			Replica r = replicas.get(Math.floorMod(start + i, size));
+			if (r.monitor.isAvailable() 
+					&& (best == null || r.outstanding.get() < best.outstanding.get())) {
+				best = r;
+			}
+		}
+		if (best == null) {
+			fallback.mark();
+			return super.getConnection();
+		}
+		return best.connect();
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param primary primary RDF store, used when no replica is available
+	 * @param metrics metric registry
+	 */
+	public LoadBalancedRepository(Repository primary, MetricRegistry metrics) {
+		super(primary);
+		this.metrics = metrics;
+		this.fallback = metrics.meter(MetricRegistry.name(LoadBalancedRepository.class, "fallback"));
+	}
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.belgif.link.helpers;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+
+import org.eclipse.rdf4j.model.BNode;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFParseException;
+import org.eclipse.rdf4j.rio.RDFParser;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.BasicParserSettings;
+import org.eclipse.rdf4j.rio.helpers.StatementCollector;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parallel loader for line-based formats (N-Triples, N-Quads).
+ *
+ * The input is split into line-aligned chunks, which are parsed in parallel
+ * on a fork-join pool. Parsed chunks are put on a queue, drained by one or more
+ * writers, each committing a chunk per transaction on its own connection.
+ *
+ * @author Bart.Hanssens
+ */
+public class ParallelLoader {
+	private final static Logger LOG = LoggerFactory.getLogger(ParallelLoader.class);
+
+	private final static ValueFactory F = SimpleValueFactory.getInstance();
+	private final static List<Statement> DONE = Collections.emptyList();
+
+	private final Repository repo;
+	private final int threads;
+	private final int writers;
+	private final int batchSize;
+
+	/**
+	 * Check if a format can be loaded in parallel
+	 *
+	 * @param fmt RDF format
+	 * @return true if line-based
+	 */
+	public static boolean isSupported(RDFFormat fmt) {
+		return fmt.equals(RDFFormat.NTRIPLES) || fmt.equals(RDFFormat.NQUADS);
+	}
+
+	/**
+	 * Prefix the label of a blank node
+	 *
+	 * @param <T> resource or value
+	 * @param v value
+	 * @param prefix prefix
+	 * @return blank node with prefixed label, or the value itself
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T extends Value> T relabel(T v, String prefix) {
+		return (v instanceof BNode) ? (T) F.createBNode(prefix + ((BNode) v).getID()) : v;
+	}
+
+	/**
+	 * Parse a line-aligned chunk.
+	 * Blank node labels are prefixed with an ID of the import, so they are the
+	 * same across chunks but not across imports.
+	 *
+	 * @param chunk lines
+	 * @param fmt RDF format
+	 * @param prefix blank node prefix of this import
+	 * @return list of statements
+	 */
+	private static List<Statement> parse(String chunk, RDFFormat fmt, String prefix) {
+		List<Statement> stmts = new ArrayList<>();
+
+		RDFParser parser = Rio.createParser(fmt);
+		// blank nodes must be the same across chunks
+		parser.getParserConfig().set(BasicParserSettings.PRESERVE_BNODE_IDS, true);
+		parser.setRDFHandler(new StatementCollector(stmts) {
+			@Override
+			public void handleStatement(Statement st) {
+				Resource subj = relabel(st.getSubject(), prefix);
+				Value obj = relabel(st.getObject(), prefix);
+				Resource ctx = st.getContext();
+				super.handleStatement((ctx == null)
+					? F.createStatement(subj, st.getPredicate(), obj)
+					: F.createStatement(subj, st.getPredicate(), obj, relabel(ctx, prefix)));
+			}
+		});
+		try {
+			parser.parse(new StringReader(chunk), RDFMessageBodyReader.BASE);
+		} catch (IOException ioe) {
+			throw new RDFParseException(ioe);
+		}
+		return stmts;
+	}
+
+	/**
+	 * Take parsed chunks from the queue and commit them, until done.
+	 * After an error, the queue is still drained so the reader is not blocked.
+	 * On a partitioned store, a chunk is split and committed per shard,
+	 * connections to the shards are opened when needed.
+	 *
+	 * @param queue queue
+	 * @param permits permits to release when a chunk was taken
+	 * @param count counter
+	 * @param error first error
+	 * @return number of transactions
+	 * @throws InterruptedException
+	 */
+	private long write(BlockingQueue<List<Statement>> queue, Semaphore permits,
+			AtomicLong count, AtomicReference<Exception> error) throws InterruptedException {
+		long batches = 0;
+		Map<Repository, RepositoryConnection> conns = new HashMap<>();
+
+		try {
+			List<Statement> stmts;
+			while ((stmts = queue.take()) != DONE) {
+				permits.release();
+				if (error.get() != null) {
+					continue;
+				}
+				for (Map.Entry<Repository, Model> part: 
+									PartitionedRepository.split(repo, stmts).entrySet()) {
+					RepositoryConnection conn = null;
+					try {
+						conn = conns.computeIfAbsent(part.getKey(), Repository::getConnection);
+						conn.begin();
+						conn.add(part.getValue());
+						conn.commit();
+						count.addAndGet(part.getValue().size());
+						batches++;
+					} catch (RepositoryException e) {
+						error.compareAndSet(null, e);
+						if (conn != null && conn.isActive()) {
+							conn.rollback();
+						}
+						break;
+					}
+				}
+			}
+		} finally {
+			conns.values().forEach(RepositoryConnection::close);
+		}
+		return batches;
+	}
+
+	/**
+	 * Load N-Triples or N-Quads in parallel.
+	 * Chunks committed before an error are kept.
+	 *
+	 * @param in input stream
+	 * @param fmt RDF format
+	 * @return import summary
+	 */
+	public ImportResult load(InputStream in, RDFFormat fmt) {
+		long start = System.currentTimeMillis();
+
+		// limit the number of chunks being parsed or waiting to be written
+		Semaphore permits = new Semaphore(threads * 2);
+		BlockingQueue<List<Statement>> queue = new LinkedBlockingQueue<>();
+		AtomicReference<Exception> error = new AtomicReference<>();
+		AtomicLong count = new AtomicLong();
+		String prefix = UUID.randomUUID().toString().replace("-", "") + "-";
+
+		ForkJoinPool parsers = new ForkJoinPool(threads);
+		ExecutorService exec = Executors.newFixedThreadPool(writers);
+
+		List<Future<Long>> results = new ArrayList<>(writers);
+		for (int i = 0; i < writers; i++) {
+			results.add(exec.submit(() -> write(queue, permits, count, error)));
+		}
+
+		try (BufferedReader r = new BufferedReader(
+								new InputStreamReader(in, StandardCharsets.UTF_8))) {
+			StringBuilder chunk = new StringBuilder();
+			int lines = 0;
+			String line;
+			while (error.get() == null) {
+				line = r.readLine();
+				if (line != null) {
+					chunk.append(line).append('\n');
+					lines++;
+				}
+				if ((line == null && lines > 0) || lines >= batchSize) {
+					String s = chunk.toString();
+					chunk.setLength(0);
+					lines = 0;
+					permits.acquire();
+					parsers.execute(() -> {
+						try {
+							queue.put(parse(s, fmt, prefix));
+						} catch (InterruptedException | RuntimeException e) {
+							error.compareAndSet(null, e);
+							permits.release();
+						}
+					});
+				}
+				if (line == null) {
+					break;
+				}
+			}
+			parsers.shutdown();
+			parsers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (IOException | InterruptedException e) {
+			error.compareAndSet(null, e);
+			parsers.shutdownNow();
+		} finally {
+			for (int i = 0; i < writers; i++) {
+				queue.add(DONE);
+			}
+			exec.shutdown();
+		}
+
+		long batches = 0;
+		for (Future<Long> f: results) {
+			try {
+				batches += f.get();
+			} catch (Exception e) {
+				error.compareAndSet(null, e);
+			}
+		}
+
+		Exception e = error.get();
+		if (e != null) {
+			LOG.error("Parallel import failed after {} statements", count.get());
+			throw (e instanceof RDFParseException || e instanceof IOException)
+				? new WebApplicationException(e, Response.Status.BAD_REQUEST)
+				: new WebApplicationException(e);
+		}
+
+		ImportResult res = new ImportResult(count.get(), batches, System.currentTimeMillis() - start);
+		LOG.info("Imported {} statements in {} batches, {} statements/s",
+							res.getStatements(), res.getBatches(), res.getStatementsPerSecond());
+		return res;
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param repo RDF store
+	 * @param threads number of parser threads
+	 * @param writers number of writer connections
+	 * @param batchSize number of lines per chunk / transaction
+	 */
+	public ParallelLoader(Repository repo, int threads, int writers, int batchSize) {
+		this.repo = repo;
+		this.threads = threads;
+		this.writers = writers;
+		this.batchSize = batchSize;
+	}
+}
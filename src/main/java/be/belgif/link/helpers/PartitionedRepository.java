@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.belgif.link.helpers;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import javax.ws.rs.WebApplicationException;
+
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryException;
+
+/**
+ * Store partitioned over several repositories (shards) using consistent hashing.
+ * Statements in a named graph are stored in the shard of the graph, statements
+ * in the default graph in the shard of the subject.
+ *
+ * There is no connection to the partitioned store as a whole: the query helper,
+ * the loaders and the indexes route each operation to one shard, or run it on all
+ * shards and merge the results.
+ *
+ * @author Bart.Hanssens
+ */
+public class PartitionedRepository implements Repository {
+	// points per shard on the hash ring, for a more even spread
+	private final static int POINTS = 128;
+	private final static HashFunction HASH = Hashing.murmur3_128();
+
+	private final List<Repository> shards;
+	private final NavigableMap<Long, Repository> ring = new TreeMap<>();
+	private final ExecutorService exec;
+
+	/**
+	 * Hash a string
+	 *
+	 * @param s string
+	 * @return hash
+	 */
+	private static long hash(String s) {
+		return HASH.hashString(s, StandardCharsets.UTF_8).asLong();
+	}
+
+	/**
+	 * Get the shard for a subject or graph
+	 *
+	 * @param key subject or graph
+	 * @return shard
+	 */
+	public Repository getShard(Resource key) {
+		Map.Entry<Long, Repository> e = ring.ceilingEntry(hash(key.stringValue()));
+		return (e != null) ? e.getValue() : ring.firstEntry().getValue();
+	}
+
+	/**
+	 * Get all shards
+	 *
+	 * @return list of repositories
+	 */
+	public List<Repository> getShards() {
+		return shards;
+	}
+
+	/**
+	 * Get the store holding a subject or graph, which is the store itself if it
+	 * is not partitioned.
+	 *
+	 * @param repo RDF store
+	 * @param key subject or graph
+	 * @return repository
+	 */
+	public static Repository route(Repository repo, Resource key) {
+		return (repo instanceof PartitionedRepository)
+					? ((PartitionedRepository) repo).getShard(key) : repo;
+	}
+
+	/**
+	 * Get the store holding a statement: the shard of the graph, or the shard
+	 * of the subject for the default graph.
+	 *
+	 * @param repo RDF store
+	 * @param st statement
+	 * @return repository
+	 */
+	public static Repository route(Repository repo, Statement st) {
+		return route(repo, (st.getContext() != null) ? st.getContext() : st.getSubject());
+	}
+
+	/**
+	 * Get the shards of a store, or the store itself if it is not partitioned
+	 *
+	 * @param repo RDF store
+	 * @return list of repositories
+	 */
+	public static List<Repository> shards(Repository repo) {
+		return (repo instanceof PartitionedRepository)
+					? ((PartitionedRepository) repo).getShards() 
+					: Collections.singletonList(repo);
+	}
+
+	/**
+	 * Split statements per shard: by graph, or by subject for the default graph
+	 *
+	 * @param repo RDF store
+	 * @param stmts statements
+	 * @return statements per repository
+	 */
+	public static Map<Repository, Model> split(Repository repo, Collection<Statement> stmts) {
+		if (!(repo instanceof PartitionedRepository)) {
+			Model m = (stmts instanceof Model) ? (Model) stmts : new LinkedHashModel(stmts);
+			return Collections.singletonMap(repo, m);
+		}
+		return stmts.stream().collect(Collectors.groupingBy(
+				st -> route(repo, st),
+				LinkedHashMap::new, Collectors.<Statement, Model>toCollection(LinkedHashModel::new)));
+	}
+
+	/**
+	 * Run a function on each shard in parallel, and wait for the results.
+	 * A store that is not partitioned is used as one shard.
+	 *
+	 * @param <T> type of the result
+	 * @param repo RDF store
+	 * @param f function
+	 * @return results, in the order of the shards
+	 */
+	public static <T> List<T> scatter(Repository repo, Function<Repository, T> f) {
+		if (!(repo instanceof PartitionedRepository)) {
+			return Collections.singletonList(f.apply(repo));
+		}
+		PartitionedRepository p = (PartitionedRepository) repo;
+		List<CompletableFuture<T>> futures = new ArrayList<>(p.shards.size());
+		for (Repository shard: p.shards) {
+			futures.add(CompletableFuture.supplyAsync(() -> f.apply(shard), p.exec));
+		}
+		try {
+			return futures.stream().map(CompletableFuture::join).collect(Collectors.toList());
+		} catch (CompletionException ce) {
+			Throwable t = ce.getCause();
+			throw (t instanceof RuntimeException) ? (RuntimeException) t
+													: new WebApplicationException(t);
+		}
+	}
+
+	@Override
+	public void setDataDir(File dir) {
+		// each shard has its own directory
+	}
+
+	@Override
+	public File getDataDir() {
+		return null;
+	}
+
+	@Override
+	public void initialize() throws RepositoryException {
+		shards.forEach(Repository::initialize);
+	}
+
+	@Override
+	public boolean isInitialized() {
+		return shards.stream().allMatch(Repository::isInitialized);
+	}
+
+	@Override
+	public void shutDown() throws RepositoryException {
+		shards.forEach(Repository::shutDown);
+	}
+
+	@Override
+	public boolean isWritable() throws RepositoryException {
+		return shards.stream().allMatch(Repository::isWritable);
+	}
+
+	/**
+	 * Not supported, operations must be routed to a shard with
+	 * {@link #route(Repository, Resource)} or run on all {@link #shards(Repository)}
+	 *
+	 * @return never
+	 * @throws RepositoryException always
+	 */
+	@Override
+	public RepositoryConnection getConnection() throws RepositoryException {
+		throw new RepositoryException("Partitioned store has no connection of its own, "
+										+ "route the operation to a shard");
+	}
+
+	@Override
+	public ValueFactory getValueFactory() {
+		return SimpleValueFactory.getInstance();
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param shards repositories by name, the name determines the position on the hash ring
+	 * @param exec executor for running operations on all shards in parallel
+	 */
+	public PartitionedRepository(Map<String, Repository> shards, ExecutorService exec) {
+		this.shards = new ArrayList<>(shards.values());
+		for (Map.Entry<String, Repository> e: shards.entrySet()) {
+			for (int i = 0; i < POINTS; i++) {
+				ring.put(hash(e.getKey() + "#" + i), e.getValue());
+			}
+		}
+		this.exec = exec;
+	}
+}
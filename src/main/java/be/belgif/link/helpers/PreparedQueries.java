@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.belgif.link.helpers;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.rdf4j.query.GraphQuery;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.parser.QueryParserUtil;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+
+/**
+ * SPARQL graph query templates, registered by name.
+ *
+ * Templates are parsed once when registered, so a malformed query fails at
+ * startup instead of on the first request. Pages are prepared through the
+ * public RepositoryConnection API only: RDF4J 2.2.2 has no public way to
+ * evaluate an already parsed query, so the store parses the query string on
+ * each call.
+ *
+ * @author Bart.Hanssens
+ */
+class PreparedQueries {
+	private final static Map<String, String> TEMPLATES = new ConcurrentHashMap<>();
+
+	/**
+	 * Register and check a query template, with a LIMIT (%1$d) and optional OFFSET (%2$d)
+	 *
+	 * @param name name of the query
+	 * @param template query string template
+	 */
+	static void register(String name, String template) {
+		QueryParserUtil.parseGraphQuery(QueryLanguage.SPARQL, String.format(template, 1, 1), null);
+		TEMPLATES.put(name, template);
+	}
+
+	/**
+	 * Prepare a page of a registered query
+	 *
+	 * @param conn repository connection
+	 * @param name name of the query
+	 * @param limit maximum number of results
+	 * @param offset number of results to skip (if the query has an offset)
+	 * @return query, bindings are still to be set
+	 */
+	static GraphQuery prepare(RepositoryConnection conn, String name, int limit, int offset) {
+		return conn.prepareGraphQuery(QueryLanguage.SPARQL,
+							String.format(TEMPLATES.get(name), limit, offset));
+	}
+}
@@ -27,17 +27,38 @@ package be.belgif.link.helpers;
 
 import be.belgif.link.App;
 
-import java.util.HashMap;
+import com.google.common.util.concurrent.RateLimiter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
 
 import org.eclipse.rdf4j.common.iteration.Iterations;
+import org.eclipse.rdf4j.model.BNode;
 import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.Literal;
 
 import org.eclipse.rdf4j.model.Model;
 import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
 import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.model.ValueFactory;
 import org.eclipse.rdf4j.model.impl.LinkedHashModel;
@@ -47,19 +68,34 @@ import org.eclipse.rdf4j.model.vocabulary.FOAF;
 import org.eclipse.rdf4j.model.vocabulary.OWL;
 import org.eclipse.rdf4j.model.vocabulary.RDF;
 import org.eclipse.rdf4j.model.vocabulary.RDFS;
+import org.eclipse.rdf4j.model.vocabulary.SESAME;
 import org.eclipse.rdf4j.model.vocabulary.SKOS;
 import org.eclipse.rdf4j.model.vocabulary.VOID;
 import org.eclipse.rdf4j.model.vocabulary.XMLSchema;
 
+import org.eclipse.rdf4j.query.BindingSet;
 import org.eclipse.rdf4j.query.GraphQuery;
+import org.eclipse.rdf4j.query.GraphQueryResult;
 import org.eclipse.rdf4j.query.MalformedQueryException;
 import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.QueryLanguage;
 import org.eclipse.rdf4j.query.QueryResults;
+import org.eclipse.rdf4j.query.TupleQuery;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.query.UpdateExecutionException;
 
 import org.eclipse.rdf4j.repository.Repository;
 import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.eclipse.rdf4j.repository.RepositoryException;
+import org.eclipse.rdf4j.repository.RepositoryResult;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFHandler;
+import org.eclipse.rdf4j.rio.RDFHandlerException;
+import org.eclipse.rdf4j.rio.RDFParseException;
+import org.eclipse.rdf4j.rio.RDFParser;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+import org.eclipse.rdf4j.rio.ntriples.NTriplesUtil;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -80,7 +116,9 @@ public class QueryHelper {
 			+ "PREFIX dcterms: <http://purl.org/dc/terms/> " + "\n"
 			+ "PREFIX schema: <http://schema.org/> " + "\n"
  			+ "CONSTRUCT { ?s rdfs:label ?o } "
-			+ " WHERE { ?s luc:myIndex ?query . "
+			+ " WHERE { { SELECT DISTINCT ?s "
+			+ " WHERE { ?s luc:myIndex ?query } "
+			+ " LIMIT %1$d OFFSET %2$d } "
 			+ " ?s rdfs:label|dcterms:title|schema:name ?o } ";
 
 	private final static String Q_PROP
@@ -88,8 +126,68 @@ public class QueryHelper {
 			+ "PREFIX dcterms: <http://purl.org/dc/terms/> " + "\n"
 			+ "PREFIX schema: <http://schema.org/> " + "\n"
 			+ "CONSTRUCT { ?s rdfs:label ?o } "
-			+ " WHERE { ?s rdfs:label|dcterms:title|schema:name ?o . "
-			+ " ?s ?pred ?val } ";
+			+ " WHERE { { SELECT DISTINCT ?s "
+			+ " WHERE { ?s ?pred ?val . "
+			+ " ?s rdfs:label|dcterms:title|schema:name ?l . "
+			+ " FILTER (STR(?s) > ?after) } "
+			+ " ORDER BY STR(?s) LIMIT %1$d } "
+			+ " ?s rdfs:label|dcterms:title|schema:name ?o } ";
+
+	private final static String Q_GRAPH_SUBJ
+			= "SELECT DISTINCT ?s "
+			+ " WHERE { GRAPH ?graph { ?s ?p ?o } "
+			+ " FILTER (isIRI(?s) && STR(?s) > ?after) } "
+			+ " ORDER BY STR(?s) LIMIT %d";
+
+	private final static String Q_GRAPH_PAGE
+			= "SELECT ?s ?p ?o "
+			+ " WHERE { VALUES ?s { %s } "
+			+ " GRAPH ?graph { ?s ?p ?o } } ";
+
+	// blank nodes that are not the object of any statement in the graph
+	private final static String Q_GRAPH_BNODES
+			= "SELECT DISTINCT ?s "
+			+ " WHERE { GRAPH ?graph { ?s ?p ?o } "
+			+ " FILTER (isBlank(?s) && NOT EXISTS { GRAPH ?graph { ?x ?y ?s } }) } ";
+
+	// sesame:nil is the default graph, as in getStatements() without a context
+	private final static String Q_SUBJS
+			= "SELECT ?s ?p ?o "
+			+ " FROM <" + SESAME.NIL + "> "
+			+ " WHERE { VALUES ?s { %s } "
+			+ " ?s ?p ?o } ";
+
+	// the template without GRAPH only deletes from the default graph
+	private final static String U_DELETE_SUBJ
+			= "DELETE { ?s ?p ?o } "
+			+ " USING <" + SESAME.NIL + "> "
+			+ " WHERE { VALUES ?s { %s } "
+			+ " ?s ?p ?o } ;\n";
+
+	private final static String U_DELETE_GRAPH_SUBJ
+			= "DELETE { GRAPH ?g { ?s ?p ?o } } "
+			+ " WHERE { VALUES (?s ?g) { %s } "
+			+ " GRAPH ?g { ?s ?p ?o } } ;\n";
+
+	private final static String U_INSERT
+			= "INSERT DATA { %s }";
+
+	private final static Map<String, String> NAMESPACES = new LinkedHashMap<>();
+
+	static {
+		NAMESPACES.put(DCTERMS.PREFIX, DCTERMS.NAMESPACE);
+		NAMESPACES.put(FOAF.PREFIX, FOAF.NAMESPACE);
+		NAMESPACES.put(OWL.PREFIX, OWL.NAMESPACE);
+		NAMESPACES.put(RDF.PREFIX, RDF.NAMESPACE);
+		NAMESPACES.put(RDFS.PREFIX, RDFS.NAMESPACE);
+		NAMESPACES.put("schema", "http://schema.org");
+		NAMESPACES.put(SKOS.PREFIX, SKOS.NAMESPACE);
+		NAMESPACES.put(VOID.PREFIX, VOID.NAMESPACE);
+		NAMESPACES.put(XMLSchema.PREFIX, XMLSchema.NAMESPACE);
+
+		PreparedQueries.register("getFTS", Q_FTS);
+		PreparedQueries.register("getLabelByPred", Q_PROP);
+	}
 
 	/**
 	 * Get string as URI
@@ -121,6 +219,16 @@ public class QueryHelper {
 		return F.createLiteral(lit);
 	}
 
+	/**
+	 * Get values as string, for logging
+	 *
+	 * @param values values, can be null
+	 * @return string
+	 */
+	private static String asString(Value... values) {
+		return Arrays.toString(values);
+	}
+
 	/**
 	 * Add namespaces to triple model
 	 *
@@ -129,15 +237,7 @@ public class QueryHelper {
 	 */
 	public static Model setNamespaces(Model m) {
 		if (!m.isEmpty()) {
-			m.setNamespace(DCTERMS.PREFIX, DCTERMS.NAMESPACE);
-			m.setNamespace(FOAF.PREFIX, FOAF.NAMESPACE);
-			m.setNamespace(OWL.PREFIX, OWL.NAMESPACE);
-			m.setNamespace(RDF.PREFIX, RDF.NAMESPACE);
-			m.setNamespace(RDFS.PREFIX, RDFS.NAMESPACE);
-			m.setNamespace("schema", "http://schema.org");
-			m.setNamespace(SKOS.PREFIX, SKOS.NAMESPACE);
-			m.setNamespace(VOID.PREFIX, VOID.NAMESPACE);
-			m.setNamespace(XMLSchema.PREFIX, XMLSchema.NAMESPACE);
+			NAMESPACES.forEach((k, v) -> m.setNamespace(k, v));
 		}
 		return m;
 	}
@@ -154,8 +254,13 @@ public class QueryHelper {
 	public static Model get(Repository repo, IRI subj, Resource graph) {
 		Model m = new LinkedHashModel();
 
-		try (RepositoryConnection conn = repo.getConnection()) {
-			Iterations.addAll(conn.getStatements(subj, null, null, graph), m);
+		try (QueryTimer qt = QueryTimer.start("get", "getStatements", asString(subj, graph));
+			RepositoryConnection conn = shard(repo, subj, graph).getConnection()) {
+			qt.connected();
+			RepositoryResult<Statement> res = conn.getStatements(subj, null, null, graph);
+			qt.evaluated();
+			Iterations.addAll(res, m);
+			qt.drained(m.size());
 		} catch (RepositoryException e) {
 			throw new WebApplicationException(e);
 		}
@@ -163,7 +268,313 @@ public class QueryHelper {
 	}
 
 	/**
-	 * Prepare and run a SPARQL query
+	 * Get the store holding the statements of a subject or a graph,
+	 * which is a shard if the store is partitioned.
+	 *
+	 * @param repo RDF store
+	 * @param subj subject or null
+	 * @param graph graph or null
+	 * @return repository
+	 */
+	private static Repository shard(Repository repo, Resource subj, Resource graph) {
+		return PartitionedRepository.route(repo, (graph != null) ? graph : subj);
+	}
+
+	/**
+	 * Get all triples of multiple subjects in the default graph, in one query.
+	 * Same as calling {@link #get(Repository, IRI, Resource)} for each subject.
+	 * A partitioned store gets one query per shard.
+	 *
+	 * @param repo RDF store
+	 * @param subjs subject IRIs
+	 * @return all triples
+	 */
+	public static Model get(Repository repo, Collection<IRI> subjs) {
+		Model m = new LinkedHashModel();
+		if (subjs.isEmpty()) {
+			return m;
+		}
+		if (repo instanceof PartitionedRepository) {
+			subjs.stream().collect(Collectors.groupingBy(s -> shard(repo, s, null)))
+							.forEach((shard, part) -> m.addAll(get(shard, part)));
+			return setNamespaces(m);
+		}
+		String values = subjs.stream().map(NTriplesUtil::toNTriplesString)
+									.collect(Collectors.joining(" "));
+		String qry = String.format(Q_SUBJS, values);
+
+		try (QueryTimer qt = QueryTimer.start("getBatch", qry, null);
+			RepositoryConnection conn = repo.getConnection()) {
+			qt.connected();
+			try (TupleQueryResult res = 
+					conn.prepareTupleQuery(QueryLanguage.SPARQL, qry).evaluate()) {
+				qt.evaluated();
+				while (res.hasNext()) {
+					BindingSet bs = res.next();
+					m.add((Resource) bs.getValue("s"), (IRI) bs.getValue("p"), bs.getValue("o"));
+				}
+				qt.drained(m.size());
+			}
+		} catch (RepositoryException | MalformedQueryException | QueryEvaluationException e) {
+			throw new WebApplicationException(e);
+		}
+		return setNamespaces(m);
+	}
+
+	/**
+	 * Stream all triples by subject to an RDF handler, without building a model.
+	 * The connection is only kept open while the statements are being written.
+	 *
+	 * @param repo RDF store
+	 * @param subj subject IRI or null
+	 * @param graph graph IRI or null
+	 * @param handler RDF handler, e.g. an RDF writer
+	 * @return number of statements written
+	 * @throws WebApplicationException 404 if there are no statements
+	 */
+	public static long export(Repository repo, IRI subj, Resource graph, RDFHandler handler) {
+		long count = 0;
+
+		try (QueryTimer qt = QueryTimer.start("export", "getStatements", asString(subj, graph));
+			RepositoryConnection conn = shard(repo, subj, graph).getConnection()) {
+			qt.connected();
+			try (RepositoryResult<Statement> res = conn.getStatements(subj, null, null, graph)) {
+				qt.evaluated();
+				// nothing has been written yet, so the status can still be set
+				if (!res.hasNext()) {
+					throw new WebApplicationException(Response.Status.NOT_FOUND);
+				}
+				startRDF(handler);
+				while (res.hasNext()) {
+					handler.handleStatement(res.next());
+					count++;
+				}
+				handler.endRDF();
+				qt.drained(count);
+			}
+		} catch (RepositoryException | RDFHandlerException e) {
+			throw new WebApplicationException(e);
+		}
+		return count;
+	}
+
+	/**
+	 * Stream all statements, or all statements in a graph, to an RDF handler.
+	 * A comment with the number of statements written so far is added at regular
+	 * intervals, the export can be resumed from there.
+	 * The shards of a partitioned store are exported one after the other.
+	 *
+	 * @param repo RDF store
+	 * @param graph graph IRI or null for all graphs
+	 * @param from number of statements to skip
+	 * @param checkpoint number of statements between checkpoint comments
+	 * @param limiter rate limiter (one permit per statement) or null
+	 * @param handler RDF handler, e.g. an RDF writer
+	 * @return number of statements written
+	 */
+	public static long exportAll(Repository repo, Resource graph, long from, int checkpoint,
+									RateLimiter limiter, RDFHandler handler) {
+		long count = 0;
+		long skipped = 0;
+		List<Repository> shards = (graph != null) 
+									? Collections.singletonList(shard(repo, null, graph))
+									: PartitionedRepository.shards(repo);
+
+		try (QueryTimer qt = QueryTimer.start("exportAll", "getStatements", asString(graph))) {
+			startRDF(handler);
+			for (Repository shard: shards) {
+				try (RepositoryConnection conn = shard.getConnection()) {
+					qt.connected();
+					try (RepositoryResult<Statement> res = (graph != null) 
+										? conn.getStatements(null, null, null, graph)
+										: conn.getStatements(null, null, null)) {
+						qt.evaluated();
+						while (res.hasNext()) {
+							Statement st = res.next();
+							if (skipped < from) {
+								skipped++;
+								continue;
+							}
+							handler.handleStatement(st);
+							count++;
+							if (count % checkpoint == 0) {
+								handler.handleComment("checkpoint " + (skipped + count));
+								if (limiter != null) {
+									limiter.acquire(checkpoint);
+								}
+							}
+						}
+					}
+				}
+			}
+			handler.endRDF();
+			qt.drained(count);
+		} catch (RepositoryException | RDFHandlerException e) {
+			throw new WebApplicationException(e);
+		}
+		return count;
+	}
+
+	/**
+	 * Get the blank nodes in a graph that are not used as an object
+	 *
+	 * @param conn connection to the store
+	 * @param graph graph IRI
+	 * @return blank nodes
+	 */
+	private static List<Resource> getBlankRoots(RepositoryConnection conn, Resource graph) {
+		List<Resource> roots = new ArrayList<>();
+		TupleQuery tq = conn.prepareTupleQuery(QueryLanguage.SPARQL, Q_GRAPH_BNODES);
+		tq.setBinding("graph", graph);
+		try (TupleQueryResult res = tq.evaluate()) {
+			while (res.hasNext()) {
+				roots.add((Resource) res.next().getValue("s"));
+			}
+		}
+		return roots;
+	}
+
+	/**
+	 * Stream the statements about blank nodes to an RDF handler, including the
+	 * statements about the blank nodes used as their objects.
+	 *
+	 * @param conn connection to the store
+	 * @param graph graph IRI
+	 * @param todo blank nodes to write, more are added while writing
+	 * @param handler RDF handler
+	 * @return number of statements written
+	 */
+	private static long exportBlank(RepositoryConnection conn, Resource graph, 
+										Deque<Resource> todo, RDFHandler handler) {
+		Set<Resource> done = new HashSet<>();
+		long count = 0;
+		while (!todo.isEmpty()) {
+			Resource bnode = todo.poll();
+			if (!done.add(bnode)) {
+				continue;
+			}
+			try (RepositoryResult<Statement> res = conn.getStatements(bnode, null, null, graph)) {
+				while (res.hasNext()) {
+					Statement st = res.next();
+					if (st.getObject() instanceof BNode) {
+						todo.add((BNode) st.getObject());
+					}
+					handler.handleStatement(st);
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Stream all triples of a page of subjects in a graph to an RDF handler.
+	 * Blank nodes used as objects are written as well, and on the last page also
+	 * the blank nodes that are not used as an object at all, so no statements
+	 * in the graph are left out.
+	 *
+	 * @param repo RDF store
+	 * @param subjs subject IRIs, see {@link #getSubjects}
+	 * @param graph graph IRI
+	 * @param last true if this is the last page
+	 * @param handler RDF handler, e.g. an RDF writer
+	 * @return number of statements written
+	 * @throws WebApplicationException 404 if there are no subjects
+	 */
+	public static long export(Repository repo, List<IRI> subjs, Resource graph, 
+											boolean last, RDFHandler handler) {
+		String values = subjs.stream().map(NTriplesUtil::toNTriplesString)
+									.collect(Collectors.joining(" "));
+		String qry = String.format(Q_GRAPH_PAGE, values);
+		long count = 0;
+
+		try (QueryTimer qt = QueryTimer.start("exportPage", qry, graph);
+			RepositoryConnection conn = shard(repo, null, graph).getConnection()) {
+			qt.connected();
+			Deque<Resource> bnodes = new ArrayDeque<>();
+			if (last) {
+				bnodes.addAll(getBlankRoots(conn, graph));
+			}
+			// nothing has been written yet, so the status can still be set
+			if (subjs.isEmpty() && bnodes.isEmpty()) {
+				throw new WebApplicationException(Response.Status.NOT_FOUND);
+			}
+			startRDF(handler);
+			if (!subjs.isEmpty()) {
+				TupleQuery tq = conn.prepareTupleQuery(QueryLanguage.SPARQL, qry);
+				tq.setBinding("graph", graph);
+				try (TupleQueryResult res = tq.evaluate()) {
+					qt.evaluated();
+					while (res.hasNext()) {
+						BindingSet bs = res.next();
+						Value obj = bs.getValue("o");
+						if (obj instanceof BNode) {
+							bnodes.add((BNode) obj);
+						}
+						handler.handleStatement(F.createStatement((Resource) bs.getValue("s"), 
+								(IRI) bs.getValue("p"), obj, graph));
+						count++;
+					}
+				}
+			}
+			count += exportBlank(conn, graph, bnodes, handler);
+			handler.endRDF();
+			qt.drained(count);
+		} catch (RepositoryException | MalformedQueryException | QueryEvaluationException 
+				| RDFHandlerException e) {
+			throw new WebApplicationException(e);
+		}
+		return count;
+	}
+
+	/**
+	 * Start writing RDF, including the namespaces
+	 * 
+	 * @param handler RDF handler
+	 */
+	private static void startRDF(RDFHandler handler) {
+		handler.startRDF();
+		for (Map.Entry<String, String> ns : NAMESPACES.entrySet()) {
+			handler.handleNamespace(ns.getKey(), ns.getValue());
+		}
+	}
+
+	/**
+	 * Get a page of subjects in a graph, sorted by IRI
+	 *
+	 * @param repo RDF store
+	 * @param graph graph IRI
+	 * @param after only subjects sorting after this IRI, or null for the first page
+	 * @param limit maximum number of subjects
+	 * @return list of subjects
+	 */
+	public static List<IRI> getSubjects(Repository repo, Resource graph, String after, int limit) {
+		List<IRI> subjs = new ArrayList<>(limit);
+		String qry = String.format(Q_GRAPH_SUBJ, limit);
+		Literal from = asLiteral(after != null ? after : "");
+
+		try (QueryTimer qt = QueryTimer.start("getSubjects", qry, asString(graph, from));
+			RepositoryConnection conn = shard(repo, null, graph).getConnection()) {
+			qt.connected();
+			TupleQuery tq = conn.prepareTupleQuery(QueryLanguage.SPARQL, qry);
+			tq.setBinding("graph", graph);
+			tq.setBinding("after", from);
+			try (TupleQueryResult res = tq.evaluate()) {
+				qt.evaluated();
+				while (res.hasNext()) {
+					subjs.add((IRI) res.next().getValue("s"));
+				}
+				qt.drained(subjs.size());
+			}
+		} catch (RepositoryException | MalformedQueryException | QueryEvaluationException e) {
+			throw new WebApplicationException(e);
+		}
+		return subjs;
+	}
+
+	/**
+	 * Prepare and run a SPARQL query.
+	 * On a partitioned store, the query runs on each shard and the results are merged.
 	 *
 	 * @param repo repository
 	 * @param qry query string
@@ -171,44 +582,116 @@ public class QueryHelper {
 	 * @return results in triple model
 	 */
 	public static Model query(Repository repo, String qry, Map<String, Value> bindings) {
-		try (RepositoryConnection conn = repo.getConnection()) {
+		Model m = new LinkedHashModel();
+		PartitionedRepository.scatter(repo, shard -> query(shard, "query", qry, bindings, conn -> {
 			GraphQuery gq = conn.prepareGraphQuery(QueryLanguage.SPARQL, qry);
 			bindings.forEach((k, v) -> gq.setBinding(k, v));
+			return gq;
+		})).forEach(m::addAll);
+		return setNamespaces(m);
+	}
 
-			return setNamespaces(QueryResults.asModel(gq.evaluate()));
+	/**
+	 * Prepare and run a SPARQL query
+	 *
+	 * @param repo repository
+	 * @param op name of the operation, for metrics
+	 * @param qry query string, for logging
+	 * @param bindings bindings, for logging
+	 * @param prepare prepares the query and sets the bindings
+	 * @return results in triple model
+	 */
+	private static Model query(Repository repo, String op, String qry, Object bindings,
+						Function<RepositoryConnection, GraphQuery> prepare) {
+		try (QueryTimer qt = QueryTimer.start(op, qry, bindings);
+			RepositoryConnection conn = repo.getConnection()) {
+			qt.connected();
+			GraphQueryResult res = prepare.apply(conn).evaluate();
+			qt.evaluated();
+			Model m = QueryResults.asModel(res);
+			qt.drained(m.size());
+			return setNamespaces(m);
 		} catch (RepositoryException | MalformedQueryException | QueryEvaluationException e) {
 			throw new WebApplicationException(e);
 		}
 	}
 
 	/**
-	 * Full text search
+	 * Merge the statements of a page of subjects from several models
+	 *
+	 * @param parts models
+	 * @param subjs subjects in the page
+	 * @return model
+	 */
+	private static Model merge(List<Model> parts, Collection<Resource> subjs) {
+		Model m = new LinkedHashModel();
+		for (Resource subj: subjs) {
+			parts.forEach(part -> m.addAll(part.filter(subj, null, null)));
+		}
+		return setNamespaces(m);
+	}
+
+	/**
+	 * Full text search.
+	 * On a partitioned store, all shards are searched in parallel and the best
+	 * matches of each shard take turns.
 	 *
 	 * @param repo RDF store
 	 * @param text text to search for
+	 * @param offset number of subjects to skip
+	 * @param limit maximum number of subjects
 	 * @return RDF model
 	 */
-	public static Model getFTS(Repository repo, String text) {
-		String qry = Q_FTS;
-		Map<String, Value> map = new HashMap();
-		map.put("query", asLiteral(text + "*"));
-		return QueryHelper.query(repo, qry, map);
+	public static Model getFTS(Repository repo, String text, int offset, int limit) {
+		if (repo instanceof PartitionedRepository) {
+			List<Model> parts = PartitionedRepository.scatter(repo, 
+										shard -> getFTS(shard, text, 0, offset + limit));
+			List<Iterator<Resource>> ranked = parts.stream().map(p -> p.subjects().iterator())
+													.collect(Collectors.toList());
+			Set<Resource> subjs = new LinkedHashSet<>();
+			while (subjs.size() < offset + limit && ranked.stream().anyMatch(Iterator::hasNext)) {
+				ranked.stream().filter(Iterator::hasNext).forEach(it -> subjs.add(it.next()));
+			}
+			return merge(parts, subjs.stream().skip(offset).limit(limit)
+												.collect(Collectors.toList()));
+		}
+		Literal query = asLiteral(text + "*");
+		return query(repo, "getFTS", Q_FTS, query, conn -> {
+			GraphQuery gq = PreparedQueries.prepare(conn, "getFTS", limit, offset);
+			gq.setBinding("query", query);
+			return gq;
+		});
 	}
 
 	/**
-	 * Get URI and RDFS label for triples having a specific property
+	 * Get URI and RDFS label for triples having a specific property.
+	 * On a partitioned store, all shards are queried in parallel and the pages merged.
 	 *
 	 * @param repo repository
 	 * @param pred predicate URI
 	 * @param val object value
+	 * @param after only subjects sorting after this IRI, or null for the first page
+	 * @param limit maximum number of subjects
 	 * @return
 	 */
-	public static Model getLabelByPred(Repository repo, IRI pred, Value val) {
-		String qry = Q_PROP;
-		Map<String, Value> map = new HashMap();
-		map.put("pred", pred);
-		map.put("val", val);
-		return QueryHelper.query(repo, qry, map);
+	public static Model getLabelByPred(Repository repo, IRI pred, Value val, 
+													String after, int limit) {
+		if (repo instanceof PartitionedRepository) {
+			List<Model> parts = PartitionedRepository.scatter(repo,
+										shard -> getLabelByPred(shard, pred, val, after, limit));
+			return merge(parts, parts.stream().flatMap(p -> p.subjects().stream())
+											.distinct()
+											.sorted(Comparator.comparing(Resource::stringValue))
+											.limit(limit).collect(Collectors.toList()));
+		}
+		Literal from = asLiteral(after != null ? after : "");
+		return query(repo, "getLabelByPred", Q_PROP, Arrays.asList(pred, val, from), conn -> {
+			GraphQuery gq = PreparedQueries.prepare(conn, "getLabelByPred", limit, 0);
+			gq.setBinding("pred", pred);
+			gq.setBinding("val", val);
+			gq.setBinding("after", from);
+			return gq;
+		});
 	}
 
 	/**
@@ -218,24 +701,279 @@ public class QueryHelper {
 	 * @param m triples
 	 */
 	public static void add(Repository repo, Model m) {
-		try (RepositoryConnection conn = repo.getConnection()) {
+		PartitionedRepository.split(repo, m).forEach(QueryHelper::addTo);
+	}
+
+	/**
+	 * Put statements in one store or shard
+	 *
+	 * @param repo RDF store
+	 * @param m triples
+	 */
+	private static void addTo(Repository repo, Model m) {
+		try (QueryTimer qt = QueryTimer.start("add", "add", m.subjects());
+			RepositoryConnection conn = repo.getConnection()) {
+			qt.connected();
 			conn.add(m);
+			qt.evaluated();
 		} catch (RepositoryException e) {
 			throw new WebApplicationException(e);
 		}
 	}
 
 	/**
-	 * Delete all triples for subject URL
+	 * Update the subjects in a model, only adding and removing the statements
+	 * that changed. The current statements are compared per subject and graph,
+	 * only the difference is written, in one transaction.
+	 * Note that parsed blank nodes never match the stored ones.
+	 * On a partitioned store, each shard is updated in its own transaction.
 	 *
 	 * @param repo RDF store
-	 * @param url subject to delete
+	 * @param m triples
+	 * @return statements added and removed
+	 */
+	public static UpdateResult diff(Repository repo, Model m) {
+		Map<Repository, Model> parts = PartitionedRepository.split(repo, m);
+		if (parts.size() == 1 && parts.containsKey(repo)) {
+			return diffIn(repo, m);
+		}
+		return UpdateResult.merge(parts.entrySet().stream()
+						.map(e -> diffIn(e.getKey(), e.getValue())).collect(Collectors.toList()));
+	}
+
+	/**
+	 * Update the subjects in a model in one store or shard
+	 *
+	 * @param repo RDF store
+	 * @param m triples
+	 * @return statements added and removed
+	 */
+	private static UpdateResult diffIn(Repository repo, Model m) {
+		Model added = new LinkedHashModel();
+		Model removed = new LinkedHashModel();
+
+		try (QueryTimer qt = QueryTimer.start("diff", "getStatements", m.subjects());
+			RepositoryConnection conn = repo.getConnection()) {
+			qt.connected();
+			for (Resource subj: m.subjects()) {
+				for (Resource ctx: m.filter(subj, null, null).contexts()) {
+					Model incoming = m.filter(subj, null, null, ctx);
+					Model current = Iterations.addAll(
+						conn.getStatements(subj, null, null, ctx), new LinkedHashModel());
+					current.stream().filter(st -> !incoming.contains(st)).forEach(removed::add);
+					incoming.stream().filter(st -> !current.contains(st)).forEach(added::add);
+				}
+			}
+			qt.evaluated();
+			if (!added.isEmpty() || !removed.isEmpty()) {
+				conn.begin();
+				// only remove from the graph of the statement (or the default graph)
+				for (Statement st: removed) {
+					conn.remove(st.getSubject(), st.getPredicate(), st.getObject(), st.getContext());
+				}
+				conn.add(added);
+				conn.commit();
+			}
+			qt.drained(added.size() + removed.size());
+		} catch (RepositoryException e) {
+			throw new WebApplicationException(e);
+		}
+		return new UpdateResult(added, removed);
+	}
+
+	/**
+	 * Replace the subjects in a model: remove all their statements in the graphs
+	 * used in the model, and add the new ones.
+	 * Blank nodes are always new, so only IRI subjects are removed.
+	 * This is sent as one SPARQL update, so a remote store gets one request and
+	 * executes it in one transaction. 
+	 * On a partitioned store, each shard gets its own update.
+	 * The current statements are read before the update, callers must make sure
+	 * there are no other writes to the same subjects in between.
+	 *
+	 * @param repo RDF store
+	 * @param m triples
+	 * @return statements added and removed
+	 */
+	public static UpdateResult replace(Repository repo, Model m) {
+		return UpdateResult.merge(PartitionedRepository.split(repo, m).entrySet().stream()
+						.map(e -> replaceIn(e.getKey(), e.getValue())).collect(Collectors.toList()));
+	}
+
+	/**
+	 * Replace the subjects in a model in one store or shard
+	 *
+	 * @param repo RDF store
+	 * @param m triples
+	 * @return statements added and removed
 	 */
-	public static void delete(Repository repo, IRI url, Resource graph) {
+	private static UpdateResult replaceIn(Repository repo, Model m) {
+		Model current = new LinkedHashModel();
+		StringBuilder subjs = new StringBuilder();
+		StringBuilder graphSubjs = new StringBuilder();
+		StringBuilder data = new StringBuilder();
+
+		for (Resource subj: m.subjects()) {
+			if (!(subj instanceof IRI)) {
+				continue;
+			}
+			String s = NTriplesUtil.toNTriplesString(subj);
+			for (Resource ctx: m.filter(subj, null, null).contexts()) {
+				if (ctx == null) {
+					subjs.append(s).append(' ');
+				} else {
+					graphSubjs.append('(').append(s).append(' ')
+						.append(NTriplesUtil.toNTriplesString(ctx)).append(") ");
+				}
+			}
+		}
+		for (Statement st: m) {
+			String triple = NTriplesUtil.toNTriplesString(st.getSubject()) + " " 
+							+ NTriplesUtil.toNTriplesString(st.getPredicate()) + " "
+							+ NTriplesUtil.toNTriplesString(st.getObject()) + " . ";
+			if (st.getContext() == null) {
+				data.append(triple);
+			} else {
+				data.append("GRAPH ").append(NTriplesUtil.toNTriplesString(st.getContext()))
+					.append(" { ").append(triple).append("} ");
+			}
+		}
+
+		StringBuilder upd = new StringBuilder();
+		if (subjs.length() > 0) {
+			upd.append(String.format(U_DELETE_SUBJ, subjs));
+		}
+		if (graphSubjs.length() > 0) {
+			upd.append(String.format(U_DELETE_GRAPH_SUBJ, graphSubjs));
+		}
+		upd.append(String.format(U_INSERT, data));
+
+		try (QueryTimer qt = QueryTimer.start("replace", "update", m.subjects());
+			RepositoryConnection conn = repo.getConnection()) {
+			qt.connected();
+			// statements that will be removed, for the change log
+			for (Resource subj: m.subjects()) {
+				if (subj instanceof IRI) {
+					for (Resource ctx: m.filter(subj, null, null).contexts()) {
+						Iterations.addAll(conn.getStatements(subj, null, null, ctx), current);
+					}
+				}
+			}
+			conn.prepareUpdate(QueryLanguage.SPARQL, upd.toString()).execute();
+			qt.evaluated();
+		} catch (RepositoryException | MalformedQueryException | UpdateExecutionException e) {
+			throw new WebApplicationException(e);
+		}
+		current.removeIf(m::contains);
+		return new UpdateResult(m, current);
+	}
+
+	/**
+	 * Bulk load statements, parsing the input as a stream and committing the
+	 * statements in batches. Batches committed before an error are kept.
+	 * On a partitioned store, each shard gets its own batches.
+	 *
+	 * @param repo RDF store
+	 * @param in input stream
+	 * @param fmt RDF format
+	 * @param batchSize number of statements per transaction
+	 * @return import summary
+	 */
+	public static ImportResult load(Repository repo, InputStream in, RDFFormat fmt, int batchSize) {
+		if (repo instanceof PartitionedRepository) {
+			return loadPartitioned(repo, in, fmt, batchSize);
+		}
+		RDFParser parser = Rio.createParser(fmt);
+
 		try (RepositoryConnection conn = repo.getConnection()) {
+			BatchImportHandler handler = new BatchImportHandler(conn, batchSize);
+			parser.setRDFHandler(handler);
+			parser.parse(in, RDFMessageBodyReader.BASE);
+			return new ImportResult(handler.getCount(), handler.getBatches(), handler.getMillis());
+		} catch (IOException | RDFParseException e) {
+			throw new WebApplicationException(e, Response.Status.BAD_REQUEST);
+		} catch (RepositoryException | RDFHandlerException e) {
+			throw new WebApplicationException(e);
+		}
+	}
+
+	/**
+	 * Bulk load statements into a partitioned store, with a batch import handler
+	 * and a connection per shard.
+	 *
+	 * @param repo partitioned RDF store
+	 * @param in input stream
+	 * @param fmt RDF format
+	 * @param batchSize number of statements per transaction
+	 * @return import summary
+	 */
+	private static ImportResult loadPartitioned(Repository repo, InputStream in, RDFFormat fmt, 
+																			int batchSize) {
+		long start = System.currentTimeMillis();
+		RDFParser parser = Rio.createParser(fmt);
+		Map<Repository, RepositoryConnection> conns = new LinkedHashMap<>();
+		Map<Repository, BatchImportHandler> handlers = new LinkedHashMap<>();
+
+		try {
+			for (Repository shard: PartitionedRepository.shards(repo)) {
+				conns.put(shard, shard.getConnection());
+				handlers.put(shard, new BatchImportHandler(conns.get(shard), batchSize));
+			}
+			parser.setRDFHandler(new AbstractRDFHandler() {
+				@Override
+				public void startRDF() throws RDFHandlerException {
+					handlers.values().forEach(BatchImportHandler::startRDF);
+				}
+
+				@Override
+				public void handleStatement(Statement st) throws RDFHandlerException {
+					handlers.get(PartitionedRepository.route(repo, st)).handleStatement(st);
+				}
+
+				@Override
+				public void endRDF() throws RDFHandlerException {
+					handlers.values().forEach(BatchImportHandler::endRDF);
+				}
+			});
+			parser.parse(in, RDFMessageBodyReader.BASE);
+			return new ImportResult(
+					handlers.values().stream().mapToLong(BatchImportHandler::getCount).sum(),
+					handlers.values().stream().mapToLong(BatchImportHandler::getBatches).sum(),
+					System.currentTimeMillis() - start);
+		} catch (IOException | RDFParseException e) {
+			throw new WebApplicationException(e, Response.Status.BAD_REQUEST);
+		} catch (RepositoryException | RDFHandlerException e) {
+			throw new WebApplicationException(e);
+		} finally {
+			conns.values().forEach(RepositoryConnection::close);
+		}
+	}
+
+	/**
+	 * Delete all triples for subject URL, or all triples in a graph.
+	 * The triples of a subject are returned, the triples of a graph are not
+	 * since a graph can be very large.
+	 *
+	 * @param repo RDF store
+	 * @param url subject to delete
+	 * @param graph graph to delete from, or null for the default graph
+	 * @return triples removed from the subject, empty when deleting a graph
+	 */
+	public static Model delete(Repository repo, IRI url, Resource graph) {
+		Model removed = new LinkedHashModel();
+		try (QueryTimer qt = QueryTimer.start("delete", "remove", asString(url, graph));
+			RepositoryConnection conn = shard(repo, url, graph).getConnection()) {
+			qt.connected();
+			conn.begin();
+			if (url != null) {
+				Iterations.addAll(conn.getStatements(url, null, null, graph), removed);
+			}
 			conn.remove(url, null, null, graph);
+			conn.commit();
+			qt.evaluated();
 		} catch (RepositoryException e) {
 			throw new WebApplicationException(e);
 		}
+		return removed;
 	}
 }
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.belgif.link.helpers;
+
+import com.codahale.metrics.MetricRegistry;
+
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Times the phases of a store operation: getting a connection, evaluating the
+ * query and draining the results. Slow operations are logged when closed.
+ *
+ * @author Bart.Hanssens
+ */
+class QueryTimer implements AutoCloseable {
+	private final static Logger LOG = LoggerFactory.getLogger(QueryTimer.class);
+
+	private final MetricRegistry metrics = LinkMetrics.getMetrics();
+	private final String op;
+	private final String query;
+	private final Object bindings;
+	private final long start;
+	private long last;
+
+	/**
+	 * Start timing an operation
+	 *
+	 * @param op name of the operation
+	 * @param query SPARQL query or description
+	 * @param bindings bindings, only used for logging
+	 * @return timer
+	 */
+	static QueryTimer start(String op, String query, Object bindings) {
+		return new QueryTimer(op, query, bindings);
+	}
+
+	/**
+	 * Record the duration of a phase since the previous one
+	 *
+	 * @param phase name of the phase
+	 */
+	private void phase(String phase) {
+		long now = System.nanoTime();
+		metrics.timer(MetricRegistry.name(QueryHelper.class, op, phase))
+				.update(now - last, TimeUnit.NANOSECONDS);
+		last = now;
+	}
+
+	/**
+	 * Connection was acquired
+	 */
+	void connected() {
+		phase("connect");
+	}
+
+	/**
+	 * Query was evaluated, results are available
+	 */
+	void evaluated() {
+		phase("evaluate");
+	}
+
+	/**
+	 * All results were read
+	 *
+	 * @param results number of results
+	 */
+	void drained(long results) {
+		phase("drain");
+		metrics.histogram(MetricRegistry.name(QueryHelper.class, op, "results")).update(results);
+	}
+
+	@Override
+	public void close() {
+		long total = System.nanoTime() - start;
+		metrics.timer(MetricRegistry.name(QueryHelper.class, op, "total"))
+				.update(total, TimeUnit.NANOSECONDS);
+		if (total > LinkMetrics.getSlowQuery()) {
+			LOG.warn("Slow {} ({} ms): {} {}", op, TimeUnit.NANOSECONDS.toMillis(total),
+																query, bindings);
+		}
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param op name of the operation
+	 * @param query SPARQL query or description
+	 * @param bindings bindings, only used for logging
+	 */
+	private QueryTimer(String op, String query, Object bindings) {
+		this.op = op;
+		this.query = query;
+		this.bindings = bindings;
+		this.start = System.nanoTime();
+		this.last = start;
+	}
+}
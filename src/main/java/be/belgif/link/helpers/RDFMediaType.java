@@ -25,7 +25,11 @@
  */
 package be.belgif.link.helpers;
 
+import java.util.List;
+
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Variant;
+
 import org.eclipse.rdf4j.rio.RDFFormat;
 
 /**
@@ -36,11 +40,29 @@ import org.eclipse.rdf4j.rio.RDFFormat;
 public class RDFMediaType {
 
 	// can't use RDFFormat.xyz.toString(): not constant
+	public final static String BINARY = "application/x-binary-rdf";
 	public final static String JSONLD = "application/ld+json";
+	public final static String NQUADS = "application/n-quads";
 	public final static String NTRIPLES = "application/n-triples";
 	public final static String TRIG = "application/trig";
 	public final static String TTL = "text/turtle";
 
+	// variants for content negotiation, first one is the default
+	private final static List<Variant> VARIANTS = Variant.mediaTypes(
+										MediaType.valueOf(JSONLD),
+										MediaType.valueOf(NTRIPLES),
+										MediaType.valueOf(TTL),
+										MediaType.valueOf(BINARY)).build();
+
+	/**
+	 * Get the list of variants for content negotiation
+	 *
+	 * @return list of variants
+	 */
+	public static List<Variant> getVariants() {
+		return VARIANTS;
+	}
+
 	/**
 	 * Get RDF Format from mediatype
 	 *
@@ -52,6 +74,12 @@ public class RDFMediaType {
 
 		// check for content type, ignoring the charset
 		switch (mt.getType() + "/" + mt.getSubtype()) {
+			case RDFMediaType.BINARY:
+				fmt = RDFFormat.BINARY;
+				break;
+			case RDFMediaType.NQUADS:
+				fmt = RDFFormat.NQUADS;
+				break;
 			case RDFMediaType.NTRIPLES:
 				fmt = RDFFormat.NTRIPLES;
 				break;
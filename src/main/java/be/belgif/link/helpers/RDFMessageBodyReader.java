@@ -49,11 +49,12 @@ import org.eclipse.rdf4j.rio.Rio;
  * @author Bart.Hanssens
  */
 @Provider
-@Consumes({RDFMediaType.JSONLD + ";charset=utf-8", 
+@Consumes({RDFMediaType.BINARY,
+			RDFMediaType.JSONLD + ";charset=utf-8", 
 			RDFMediaType.NTRIPLES + ";charset=utf-8", 
 			RDFMediaType.TTL + ";charset=utf-8"})
 public class RDFMessageBodyReader implements MessageBodyReader<Model> {
-	private final static String BASE = "http://www.fedict.be"; // TODO
+	final static String BASE = "http://www.fedict.be"; // TODO
 	
 	@Override
 	public boolean isReadable(Class<?> type, Type generic, Annotation[] antns, MediaType mt) {
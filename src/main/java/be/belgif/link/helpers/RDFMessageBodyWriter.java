@@ -25,6 +25,7 @@
  */
 package be.belgif.link.helpers;
 
+import com.google.common.io.CountingOutputStream;
 import com.google.common.net.HttpHeaders;
 
 import java.io.IOException;
@@ -51,7 +52,8 @@ import org.eclipse.rdf4j.rio.Rio;
  * @author Bart.Hanssens
  */
 @Provider
-@Produces({RDFMediaType.JSONLD + ";charset=utf-8",
+@Produces({RDFMediaType.BINARY,
+	RDFMediaType.JSONLD + ";charset=utf-8",
 	RDFMediaType.NTRIPLES + ";charset=utf-8",
 	RDFMediaType.TTL + ";charset=utf-8",
 	RDFMediaType.TRIG + ";charset=utf-8"})
@@ -59,7 +61,7 @@ public class RDFMessageBodyWriter implements MessageBodyWriter<Model> {
 
 	@Override
 	public boolean isWriteable(Class<?> type, Type generic, Annotation[] antns, MediaType mt) {
-		return generic == Model.class;
+		return Model.class.isAssignableFrom(type);
 	}
 
 	@Override
@@ -76,11 +78,15 @@ public class RDFMessageBodyWriter implements MessageBodyWriter<Model> {
 		}
 
 		RDFFormat fmt = RDFMediaType.getRDFFormat(mt);
+		CountingOutputStream cout = new CountingOutputStream(out);
 
+		long start = System.nanoTime();
 		try {
-			Rio.write(m, out, fmt);
+			Rio.write(m, cout, fmt);
 		} catch (RDFHandlerException ex) {
 			throw new WebApplicationException(ex);
 		}
+		LinkMetrics.serialized(fmt, System.nanoTime() - start);
+		LinkMetrics.response(fmt, cout.getCount(), m.size());
 	}
 }
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.belgif.link.helpers;
+
+import com.google.common.io.CountingOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFWriter;
+import org.eclipse.rdf4j.rio.Rio;
+
+/**
+ * Streaming RDF Writer, statements are written while they are retrieved.
+ *
+ * @author Bart.Hanssens
+ */
+@Provider
+@Produces({RDFMediaType.BINARY,
+	RDFMediaType.JSONLD + ";charset=utf-8",
+	RDFMediaType.NQUADS + ";charset=utf-8",
+	RDFMediaType.NTRIPLES + ";charset=utf-8",
+	RDFMediaType.TTL + ";charset=utf-8",
+	RDFMediaType.TRIG + ";charset=utf-8"})
+public class RDFStreamMessageBodyWriter implements MessageBodyWriter<StatementSource> {
+
+	@Override
+	public boolean isWriteable(Class<?> type, Type generic, Annotation[] antns, MediaType mt) {
+		return StatementSource.class.isAssignableFrom(type);
+	}
+
+	@Override
+	public long getSize(StatementSource s, Class<?> type, Type generic, Annotation[] antns, MediaType mt) {
+		return -1; // ignored by Jersey 2.0 anyway
+	}
+
+	@Override
+	public void writeTo(StatementSource s, Class<?> type, Type generic, Annotation[] antns, MediaType mt,
+			MultivaluedMap<String, Object> headers, OutputStream out)
+			throws IOException, WebApplicationException {
+		RDFFormat fmt = RDFMediaType.getRDFFormat(mt);
+		CountingOutputStream cout = new CountingOutputStream(out);
+
+		// includes the time needed to retrieve the statements
+		long start = System.nanoTime();
+		RDFWriter writer = Rio.createWriter(fmt, cout);
+		long count = s.writeTo(writer);
+		LinkMetrics.serialized(fmt, System.nanoTime() - start);
+		LinkMetrics.response(fmt, cout.getCount(), count);
+	}
+}
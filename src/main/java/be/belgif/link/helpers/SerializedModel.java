@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.belgif.link.helpers;
+
+import com.google.common.hash.Hashing;
+
+import java.io.ByteArrayOutputStream;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.EntityTag;
+
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFHandlerException;
+import org.eclipse.rdf4j.rio.Rio;
+
+/**
+ * Triples serialized in a specific RDF format, with a strong entity tag.
+ *
+ * @author Bart.Hanssens
+ */
+public class SerializedModel {
+	private final byte[] bytes;
+	private final EntityTag tag;
+	private final int size;
+
+	/**
+	 * Get serialized triples
+	 *
+	 * @return byte array, do not modify
+	 */
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Get strong entity tag, computed from the serialized bytes
+	 *
+	 * @return entity tag
+	 */
+	public EntityTag getTag() {
+		return tag;
+	}
+
+	/**
+	 * Get the number of serialized triples
+	 *
+	 * @return number of triples
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Check if there were any triples at all
+	 *
+	 * @return true if empty
+	 */
+	public boolean isEmpty() {
+		return bytes.length == 0;
+	}
+
+	/**
+	 * Serialize a model
+	 *
+	 * @param m triples
+	 * @param fmt RDF format
+	 * @return serialized model
+	 */
+	public static SerializedModel serialize(Model m, RDFFormat fmt) {
+		if (m.isEmpty()) {
+			return new SerializedModel(new byte[0], 0);
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream(m.size() * 128);
+		long start = System.nanoTime();
+		try {
+			Rio.write(m, out, fmt);
+		} catch (RDFHandlerException ex) {
+			throw new WebApplicationException(ex);
+		}
+		LinkMetrics.serialized(fmt, System.nanoTime() - start);
+		return new SerializedModel(out.toByteArray(), m.size());
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param bytes serialized triples
+	 * @param size number of triples
+	 */
+	private SerializedModel(byte[] bytes, int size) {
+		this.bytes = bytes;
+		this.tag = new EntityTag(Hashing.murmur3_128().hashBytes(bytes).toString());
+		this.size = size;
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.belgif.link.helpers;
+
+import java.util.List;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.rio.RDFHandler;
+
+/**
+ * Lazy source of statements, only retrieved from the store when written.
+ *
+ * @author Bart.Hanssens
+ */
+public class StatementSource {
+	private final Repository repo;
+	private final IRI subj;
+	private final List<IRI> subjs;
+	private final Resource graph;
+	private final boolean last;
+
+	/**
+	 * Stream the statements to an RDF handler
+	 *
+	 * @param handler RDF handler
+	 * @return number of statements
+	 */
+	public long writeTo(RDFHandler handler) {
+		return (subjs != null) ? QueryHelper.export(repo, subjs, graph, last, handler)
+								: QueryHelper.export(repo, subj, graph, handler);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param repo RDF store
+	 * @param subj subject IRI or null
+	 * @param graph graph IRI or null
+	 */
+	public StatementSource(Repository repo, IRI subj, Resource graph) {
+		this.repo = repo;
+		this.subj = subj;
+		this.subjs = null;
+		this.graph = graph;
+		this.last = false;
+	}
+
+	/**
+	 * Constructor for a page of subjects in a graph
+	 *
+	 * @param repo RDF store
+	 * @param subjs subject IRIs
+	 * @param graph graph IRI
+	 * @param last true if this is the last page
+	 */
+	public StatementSource(Repository repo, List<IRI> subjs, Resource graph, boolean last) {
+		this.repo = repo;
+		this.subj = null;
+		this.subjs = subjs;
+		this.graph = graph;
+		this.last = last;
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.belgif.link.helpers;
+
+import be.belgif.link.StoreClientConfiguration;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.codahale.metrics.httpclient.InstrumentedHttpClientConnectionManager;
+
+import io.dropwizard.client.ConfiguredCloseableHttpClient;
+import io.dropwizard.client.HttpClientBuilder;
+import io.dropwizard.setup.Environment;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+/**
+ * Pooled and instrumented HTTP client for the remote triple store.
+ * Adds eviction of idle connections and a pool utilization gauge
+ * to the Dropwizard HTTP client.
+ *
+ * @author Bart.Hanssens
+ */
+public class StoreHttpClientBuilder extends HttpClientBuilder {
+	private final MetricRegistry metrics;
+	private StoreClientConfiguration cfg;
+
+	/**
+	 * Use configuration
+	 *
+	 * @param cfg configuration
+	 * @return builder
+	 */
+	public StoreHttpClientBuilder using(StoreClientConfiguration cfg) {
+		super.using(cfg);
+		this.cfg = cfg;
+		return this;
+	}
+
+	@Override
+	protected ConfiguredCloseableHttpClient createClient(
+			org.apache.http.impl.client.HttpClientBuilder builder,
+			InstrumentedHttpClientConnectionManager manager, String name) {
+		if (cfg != null) {
+			builder.evictExpiredConnections()
+					.evictIdleConnections(cfg.getIdleTimeout().toMilliseconds(),
+											TimeUnit.MILLISECONDS);
+		}
+		metrics.register(MetricRegistry.name(HttpClientConnectionManager.class, name, "utilization"),
+			new RatioGauge() {
+				@Override
+				protected Ratio getRatio() {
+					PoolStats stats = manager.getTotalStats();
+					return Ratio.of(stats.getLeased(), stats.getMax());
+				}
+			});
+		return super.createClient(builder, manager, name);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param env environment
+	 */
+	public StoreHttpClientBuilder(Environment env) {
+		super(env);
+		this.metrics = env.metrics();
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.belgif.link.helpers;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import io.dropwizard.lifecycle.Managed;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Probes the triple store on a schedule with a cheap query, and keeps the result
+ * for the health check and the circuit breaker.
+ *
+ * The store is considered down after a number of failed or slow probes in a row,
+ * or while a probe is taking longer than the timeout.
+ *
+ * @author Bart.Hanssens
+ */
+public class StoreMonitor implements Managed, Runnable {
+	private final static Logger LOG = LoggerFactory.getLogger(StoreMonitor.class);
+
+	private final static String Q_PROBE = "ASK { ?s ?p ?o }";
+
+	private final String name;
+	private final Repository repo;
+	private final ScheduledExecutorService exec;
+	private final long interval;
+	private final long timeout;
+	private final int maxFailures;
+
+	private volatile long latency = -1;
+	private volatile long started = 0;
+	private volatile int failures = 0;
+	private volatile String error = null;
+
+	/**
+	 * Check if the store is available, according to the last probes
+	 *
+	 * @return true if available
+	 */
+	public boolean isAvailable() {
+		long s = started;
+		if (s != 0 && System.nanoTime() - s > TimeUnit.MILLISECONDS.toNanos(timeout)) {
+			return false;
+		}
+		return failures < maxFailures;
+	}
+
+	/**
+	 * Get the round-trip time of the last successful probe
+	 *
+	 * @return latency in milliseconds, or -1 if there was no successful probe yet
+	 */
+	public long getLatency() {
+		return latency;
+	}
+
+	/**
+	 * Get the reason why the last probe failed
+	 *
+	 * @return error message or null
+	 */
+	public String getError() {
+		return error;
+	}
+
+	/**
+	 * Get the probe interval
+	 *
+	 * @return interval in milliseconds
+	 */
+	public long getInterval() {
+		return interval;
+	}
+
+	/**
+	 * Mark the probe as failed
+	 *
+	 * @param msg reason
+	 */
+	private void failed(String msg) {
+		error = msg;
+		if (++failures == maxFailures) {
+			LOG.warn("Triple store {} unavailable: {}", name, msg);
+		}
+	}
+
+	@Override
+	public void run() {
+		long start = System.nanoTime();
+		started = start;
+		try (RepositoryConnection conn = repo.getConnection()) {
+			conn.prepareBooleanQuery(QueryLanguage.SPARQL, Q_PROBE).evaluate();
+			latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			if (latency > timeout) {
+				failed("Probe took " + latency + " ms");
+			} else {
+				if (failures >= maxFailures) {
+					LOG.info("Triple store {} available again", name);
+				}
+				failures = 0;
+				error = null;
+			}
+		} catch (RuntimeException e) {
+			// anything escaping would cancel the schedule
+			failed((e.getMessage() != null) ? e.getMessage() : e.toString());
+		} finally {
+			started = 0;
+		}
+	}
+
+	@Override
+	public void start() {
+		exec.scheduleWithFixedDelay(this, 0, interval, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void stop() {
+		// the executor is managed by the lifecycle
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param name name of the store, for logging and metrics
+	 * @param repo RDF store, without circuit breaker
+	 * @param exec scheduled executor
+	 * @param interval time between probes in milliseconds
+	 * @param timeout maximum time for a probe in milliseconds
+	 * @param maxFailures number of failed probes in a row before the store is down
+	 * @param metrics metric registry
+	 */
+	public StoreMonitor(String name, Repository repo, ScheduledExecutorService exec, 
+						long interval, long timeout, int maxFailures, MetricRegistry metrics) {
+		this.name = name;
+		this.repo = repo;
+		this.exec = exec;
+		this.interval = interval;
+		this.timeout = timeout;
+		this.maxFailures = maxFailures;
+		metrics.register(MetricRegistry.name(StoreMonitor.class, name, "latency"),
+							(Gauge<Long>) this::getLatency);
+		metrics.register(MetricRegistry.name(StoreMonitor.class, name, "available"),
+							(Gauge<Integer>) () -> isAvailable() ? 1 : 0);
+	}
+}
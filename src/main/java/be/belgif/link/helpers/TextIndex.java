@@ -0,0 +1,475 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.belgif.link.helpers;
+
+import io.dropwizard.lifecycle.Managed;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.ws.rs.WebApplicationException;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.de.GermanAnalyzer;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.analysis.fr.FrenchAnalyzer;
+import org.apache.lucene.analysis.miscellaneous.ASCIIFoldingFilter;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.analysis.nl.DutchAnalyzer;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.ByteBuffersDirectory;
+
+import org.eclipse.rdf4j.model.BNode;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.DCTERMS;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.eclipse.rdf4j.repository.RepositoryResult;
+import org.eclipse.rdf4j.rio.ntriples.NTriplesUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Embedded Lucene full text index on labels, titles, names and descriptions
+ * of IRI subjects, kept in memory and rebuilt at startup.
+ *
+ * Literals are indexed with a stemming analyzer for their language, and
+ * once more without stemming so the last word of a query can be used as a prefix.
+ *
+ * @author Bart.Hanssens
+ */
+public class TextIndex implements Managed, ChangeListener {
+	private final static Logger LOG = LoggerFactory.getLogger(TextIndex.class);
+
+	private final static ValueFactory F = SimpleValueFactory.getInstance();
+
+	private final static IRI SCHEMA_NAME = QueryHelper.asURI("http://schema.org/name");
+	private final static List<IRI> LABELS = Arrays.asList(RDFS.LABEL, DCTERMS.TITLE, SCHEMA_NAME);
+
+	private final static String Q_ALL
+			= "PREFIX rdfs: <http://www.w3.org/2000/01/rdf-schema#> " + "\n"
+			+ "PREFIX dcterms: <http://purl.org/dc/terms/> " + "\n"
+			+ "PREFIX schema: <http://schema.org/> " + "\n"
+			+ "SELECT ?s ?p ?o "
+			+ " WHERE { VALUES ?p { rdfs:label dcterms:title dcterms:description schema:name } "
+			+ " ?s ?p ?o . FILTER(isIRI(?s) && isLiteral(?o)) } ";
+
+	// fields
+	private final static String ID = "id";
+	private final static String LABEL = "label";
+	private final static String ALL = "all";
+	private final static String NAME = "name";
+	private final static String DESC = "desc";
+	private final static float NAME_BOOST = 2f;
+
+	private final static List<String> LANGS = Arrays.asList("nl", "fr", "de", "en", "");
+
+	private final Repository repo;
+	private final Analyzer analyzer;
+	private Directory index;
+	private IndexWriter writer;
+	private SearcherManager searchers;
+	private volatile boolean ready = false;
+
+	/**
+	 * Lowercase, remove accents but keep stop words, to allow prefix queries on every word
+	 */
+	private static class FoldingAnalyzer extends Analyzer {
+		@Override
+		protected TokenStreamComponents createComponents(String field) {
+			Tokenizer src = new StandardTokenizer();
+			TokenStream ts = new ASCIIFoldingFilter(new LowerCaseFilter(src));
+			return new TokenStreamComponents(src, ts);
+		}
+	}
+
+	/**
+	 * Get the name of the field for a language
+	 *
+	 * @param kind name or description
+	 * @param lang language code or empty string
+	 * @return field name
+	 */
+	private static String field(String kind, String lang) {
+		return lang.isEmpty() ? kind : kind + "_" + lang;
+	}
+
+	/**
+	 * Get an analyzer per field, stemming if the language is supported
+	 *
+	 * @return analyzer
+	 */
+	private static Analyzer analyzer() {
+		Map<String, Analyzer> map = new HashMap<>();
+		for (String kind: new String[] { NAME, DESC }) {
+			map.put(field(kind, "nl"), new DutchAnalyzer());
+			map.put(field(kind, "fr"), new FrenchAnalyzer());
+			map.put(field(kind, "de"), new GermanAnalyzer());
+			map.put(field(kind, "en"), new EnglishAnalyzer());
+		}
+		return new PerFieldAnalyzerWrapper(new FoldingAnalyzer(), map);
+	}
+
+	/**
+	 * Add a literal to a document
+	 *
+	 * @param doc document
+	 * @param pred predicate
+	 * @param lit literal
+	 */
+	private static void add(Document doc, IRI pred, Literal lit) {
+		String lang = lit.getLanguage().orElse("").split("-")[0].toLowerCase();
+		if (!LANGS.contains(lang)) {
+			lang = "";
+		}
+		String kind = LABELS.contains(pred) ? NAME : DESC;
+		doc.add(new TextField(field(kind, lang), lit.getLabel(), Store.NO));
+		doc.add(new TextField(ALL, lit.getLabel(), Store.NO));
+		if (kind.equals(NAME)) {
+			doc.add(new StoredField(LABEL, NTriplesUtil.toNTriplesString(lit)));
+		}
+	}
+
+	/**
+	 * Create an empty document for a subject
+	 *
+	 * @param subj subject
+	 * @return document
+	 */
+	private static Document doc(Resource subj) {
+		Document doc = new Document();
+		doc.add(new StringField(ID, subj.stringValue(), Store.YES));
+		return doc;
+	}
+
+	/**
+	 * Split text into terms, using the analyzer of a field
+	 *
+	 * @param field field name
+	 * @param text text
+	 * @return list of terms
+	 */
+	private List<String> terms(String field, String text) {
+		List<String> terms = new ArrayList<>();
+		try (TokenStream ts = analyzer.tokenStream(field, text)) {
+			CharTermAttribute term = ts.addAttribute(CharTermAttribute.class);
+			ts.reset();
+			while (ts.incrementToken()) {
+				terms.add(term.toString());
+			}
+			ts.end();
+		} catch (IOException ioe) {
+			throw new WebApplicationException(ioe);
+		}
+		return terms;
+	}
+
+	/**
+	 * Create a query matching all terms in a field
+	 *
+	 * @param field field name
+	 * @param text text
+	 * @param prefix use last term as prefix
+	 * @return query
+	 */
+	private Query query(String field, String text, boolean prefix) {
+		List<String> terms = terms(field, text);
+		BooleanQuery.Builder b = new BooleanQuery.Builder();
+		for (int i = 0; i < terms.size(); i++) {
+			Term t = new Term(field, terms.get(i));
+			if (prefix && i == terms.size() - 1) {
+				b.add(new BooleanQuery.Builder()
+						.add(new TermQuery(t), Occur.SHOULD)
+						.add(new PrefixQuery(t), Occur.SHOULD).build(), Occur.MUST);
+			} else {
+				b.add(new TermQuery(t), Occur.MUST);
+			}
+		}
+		return b.build();
+	}
+
+	/**
+	 * Create a query: either all words (last one can be a prefix)
+	 * or all stemmed words in one of the languages
+	 *
+	 * @param text text
+	 * @return query
+	 */
+	private Query query(String text) {
+		BooleanQuery.Builder b = new BooleanQuery.Builder();
+		b.add(query(ALL, text, true), Occur.SHOULD);
+		for (String lang: LANGS) {
+			b.add(new BoostQuery(query(field(NAME, lang), text, false), NAME_BOOST), Occur.SHOULD);
+			b.add(query(field(DESC, lang), text, false), Occur.SHOULD);
+		}
+		return b.build();
+	}
+
+	/**
+	 * Check if the index was successfully built
+	 *
+	 * @return true if ready to be used
+	 */
+	public boolean isReady() {
+		return ready;
+	}
+
+	/**
+	 * Full text search, best matches first
+	 *
+	 * @param text text to search for
+	 * @param offset number of results to skip
+	 * @param limit maximum number of results
+	 * @return links and their labels
+	 */
+	public Model search(String text, int offset, int limit) {
+		Model m = new LinkedHashModel();
+		if (text == null || text.trim().isEmpty() || limit <= 0) {
+			return QueryHelper.setNamespaces(m);
+		}
+
+		Query q = query(text);
+		IndexSearcher searcher = null;
+		try {
+			searcher = searchers.acquire();
+			TopDocs docs = searcher.search(q, (int) Math.min((long) offset + limit, Integer.MAX_VALUE));
+			for (int i = offset; i < docs.scoreDocs.length; i++) {
+				ScoreDoc sd = docs.scoreDocs[i];
+				Document doc = searcher.doc(sd.doc);
+				IRI subj = F.createIRI(doc.get(ID));
+				for (String label: doc.getValues(LABEL)) {
+					m.add(subj, RDFS.LABEL, NTriplesUtil.parseLiteral(label, F));
+				}
+			}
+		} catch (IOException ioe) {
+			throw new WebApplicationException(ioe);
+		} finally {
+			if (searcher != null) {
+				try {
+					searchers.release(searcher);
+				} catch (IOException ioe) {
+					LOG.warn("Could not release searcher", ioe);
+				}
+			}
+		}
+		return QueryHelper.setNamespaces(m);
+	}
+
+	/**
+	 * Read all labels and descriptions from a store
+	 *
+	 * @param shard store or shard
+	 * @param docs documents by subject
+	 */
+	private static void rebuild(Repository shard, Map<Resource, Document> docs) {
+		try (RepositoryConnection conn = shard.getConnection();
+			TupleQueryResult res = conn.prepareTupleQuery(QueryLanguage.SPARQL, Q_ALL).evaluate()) {
+			while (res.hasNext()) {
+				BindingSet bs = res.next();
+				Document doc = docs.computeIfAbsent((Resource) bs.getValue("s"), k -> doc(k));
+				add(doc, (IRI) bs.getValue("p"), (Literal) bs.getValue("o"));
+			}
+		} catch (RepositoryException e) {
+			throw new WebApplicationException(e);
+		}
+	}
+
+	/**
+	 * Rebuild the whole index from the store, or from each shard of a partitioned store
+	 *
+	 * @return number of indexed links
+	 */
+	public synchronized int rebuild() {
+		Map<Resource, Document> docs = new HashMap<>();
+
+		long start = System.currentTimeMillis();
+		for (Repository shard: PartitionedRepository.shards(repo)) {
+			rebuild(shard, docs);
+		}
+
+		try {
+			writer.deleteAll();
+			writer.addDocuments(docs.values());
+			writer.commit();
+			searchers.maybeRefreshBlocking();
+		} catch (IOException ioe) {
+			throw new WebApplicationException(ioe);
+		}
+		ready = true;
+		LOG.info("Indexed text of {} links in {} ms", docs.size(),
+												System.currentTimeMillis() - start);
+		return docs.size();
+	}
+
+	/**
+	 * Read a subject from the store and update the index
+	 *
+	 * @param conns connections to the store or to each shard
+	 * @param subj subject
+	 * @throws IOException
+	 */
+	private void reindex(List<RepositoryConnection> conns, Resource subj) throws IOException {
+		Document doc = doc(subj);
+		boolean empty = true;
+		for (RepositoryConnection conn: conns) {
+			try (RepositoryResult<Statement> res = conn.getStatements(subj, null, null)) {
+				while (res.hasNext()) {
+					Statement st = res.next();
+					if (st.getObject() instanceof Literal && (LABELS.contains(st.getPredicate())
+											|| st.getPredicate().equals(DCTERMS.DESCRIPTION))) {
+						add(doc, st.getPredicate(), (Literal) st.getObject());
+						empty = false;
+					}
+				}
+			}
+		}
+		Term id = new Term(ID, subj.stringValue());
+		if (empty) {
+			writer.deleteDocuments(id);
+		} else {
+			writer.updateDocument(id, doc);
+		}
+	}
+
+	/**
+	 * Read subjects from the store and update the index
+	 *
+	 * @param subjs subjects
+	 */
+	private synchronized void reindex(Set<Resource> subjs) {
+		List<RepositoryConnection> conns = new ArrayList<>();
+		try {
+			for (Repository shard: PartitionedRepository.shards(repo)) {
+				conns.add(shard.getConnection());
+			}
+			for (Resource subj: subjs) {
+				// blank nodes can't be returned as search results
+				if (!(subj instanceof BNode)) {
+					reindex(conns, subj);
+				}
+			}
+			writer.commit();
+			searchers.maybeRefreshBlocking();
+		} catch (IOException|RepositoryException e) {
+			LOG.error("Could not update text index", e);
+			ready = false;
+		} finally {
+			conns.forEach(RepositoryConnection::close);
+		}
+	}
+
+	@Override
+	public void added(Model m) {
+		reindex(m.subjects());
+	}
+
+	@Override
+	public void deleted(IRI subj, Resource graph) {
+		if (graph != null) {
+			reset();
+		} else if (subj != null) {
+			reindex(Collections.singleton(subj));
+		}
+	}
+
+	@Override
+	public void reset() {
+		try {
+			rebuild();
+		} catch (WebApplicationException e) {
+			LOG.error("Could not rebuild text index", e);
+			ready = false;
+		}
+	}
+
+	@Override
+	public void start() throws Exception {
+		index = new ByteBuffersDirectory();
+		writer = new IndexWriter(index, new IndexWriterConfig(analyzer));
+		searchers = new SearcherManager(writer, null);
+		reset();
+	}
+
+	@Override
+	public void stop() throws Exception {
+		ready = false;
+		searchers.close();
+		writer.close();
+		index.close();
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param repo RDF store
+	 */
+	public TextIndex(Repository repo) {
+		this.repo = repo;
+		this.analyzer = analyzer();
+	}
+}
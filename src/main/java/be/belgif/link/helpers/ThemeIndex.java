@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.belgif.link.helpers;
+
+import io.dropwizard.lifecycle.Managed;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import javax.ws.rs.WebApplicationException;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+import org.eclipse.rdf4j.model.vocabulary.DCAT;
+import org.eclipse.rdf4j.model.vocabulary.DCTERMS;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.eclipse.rdf4j.repository.RepositoryResult;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory inverted index from dcat:theme to links and their labels,
+ * built at startup and updated after each change.
+ *
+ * @author Bart.Hanssens
+ */
+public class ThemeIndex implements Managed, ChangeListener {
+	private final static Logger LOG = LoggerFactory.getLogger(ThemeIndex.class);
+
+	private final static List<IRI> LABELS = Arrays.asList(RDFS.LABEL, DCTERMS.TITLE,
+												QueryHelper.asURI("http://schema.org/name"));
+
+	private final static String Q_ALL
+			= "PREFIX dcat: <http://www.w3.org/ns/dcat#> " + "\n"
+			+ "PREFIX rdfs: <http://www.w3.org/2000/01/rdf-schema#> " + "\n"
+			+ "PREFIX dcterms: <http://purl.org/dc/terms/> " + "\n"
+			+ "PREFIX schema: <http://schema.org/> " + "\n"
+			+ "SELECT ?s ?theme ?o "
+			+ " WHERE { ?s dcat:theme ?theme . "
+			+ " ?s rdfs:label|dcterms:title|schema:name ?o } ";
+
+	private final Repository repo;
+	private volatile Index index = new Index();
+	private volatile boolean ready = false;
+
+	/**
+	 * Link with its themes and labels
+	 */
+	private static class Link {
+		private final Resource subj;
+		private final Set<Value> themes = new HashSet<>();
+		private final Set<Value> labels = new HashSet<>();
+
+		Link(Resource subj) {
+			this.subj = subj;
+		}
+	}
+
+	/**
+	 * Theme to links, sorted by subject, and subject to link
+	 */
+	private static class Index {
+		private final Map<Value, NavigableMap<String, Link>> themes = new ConcurrentHashMap<>();
+		private final Map<Resource, Link> subjects = new ConcurrentHashMap<>();
+
+		/**
+		 * Add or replace a link.
+		 * Links without a label are not indexed, as in the query used to rebuild.
+		 *
+		 * @param link
+		 */
+		void put(Link link) {
+			remove(link.subj);
+			if (link.themes.isEmpty() || link.labels.isEmpty()) {
+				return;
+			}
+			subjects.put(link.subj, link);
+			for (Value theme: link.themes) {
+				themes.computeIfAbsent(theme, k -> new ConcurrentSkipListMap<>())
+					.put(link.subj.stringValue(), link);
+			}
+		}
+
+		/**
+		 * Remove a link
+		 *
+		 * @param subj subject
+		 */
+		void remove(Resource subj) {
+			Link old = subjects.remove(subj);
+			if (old != null) {
+				for (Value theme: old.themes) {
+					themes.getOrDefault(theme, Collections.emptyNavigableMap())
+						.remove(subj.stringValue());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Check if the index was successfully built
+	 *
+	 * @return true if ready to be used
+	 */
+	public boolean isReady() {
+		return ready;
+	}
+
+	/**
+	 * Get a page of links and their labels for a theme, sorted by IRI
+	 *
+	 * @param theme theme IRI
+	 * @param after only links sorting after this IRI, or null for the first page
+	 * @param limit maximum number of links
+	 * @return triples
+	 */
+	public Model get(Value theme, String after, int limit) {
+		Model m = new LinkedHashModel();
+
+		NavigableMap<String, Link> links = index.themes.get(theme);
+		if (links != null) {
+			if (after != null) {
+				links = links.tailMap(after, false);
+			}
+			links.values().stream().limit(limit).forEach(link -> 
+				link.labels.forEach(l -> m.add(link.subj, RDFS.LABEL, l)));
+		}
+		return QueryHelper.setNamespaces(m);
+	}
+
+	/**
+	 * Read all themes and labels from a store
+	 *
+	 * @param shard store or shard
+	 * @param links links by subject
+	 */
+	private static void rebuild(Repository shard, Map<Resource, Link> links) {
+		try (RepositoryConnection conn = shard.getConnection();
+			TupleQueryResult res = conn.prepareTupleQuery(QueryLanguage.SPARQL, Q_ALL).evaluate()) {
+			while (res.hasNext()) {
+				BindingSet bs = res.next();
+				Resource subj = (Resource) bs.getValue("s");
+				Link link = links.computeIfAbsent(subj, k -> new Link(k));
+				link.themes.add(bs.getValue("theme"));
+				link.labels.add(bs.getValue("o"));
+			}
+		} catch (RepositoryException e) {
+			throw new WebApplicationException(e);
+		}
+	}
+
+	/**
+	 * Rebuild the whole index from the store, or from each shard of a partitioned store
+	 *
+	 * @return number of indexed links
+	 */
+	public synchronized int rebuild() {
+		Index idx = new Index();
+		Map<Resource, Link> links = new ConcurrentHashMap<>();
+
+		long start = System.currentTimeMillis();
+		for (Repository shard: PartitionedRepository.shards(repo)) {
+			rebuild(shard, links);
+		}
+		links.values().forEach(idx::put);
+
+		index = idx;
+		ready = true;
+		LOG.info("Indexed {} links in {} themes in {} ms", idx.subjects.size(), idx.themes.size(),
+												System.currentTimeMillis() - start);
+		return idx.subjects.size();
+	}
+
+	/**
+	 * Read a subject from the store and update the index
+	 *
+	 * @param conns connections to the store or to each shard
+	 * @param subj subject
+	 */
+	private void reindex(List<RepositoryConnection> conns, Resource subj) {
+		Link link = new Link(subj);
+		for (RepositoryConnection conn: conns) {
+			try (RepositoryResult<Statement> res = conn.getStatements(subj, null, null)) {
+				while (res.hasNext()) {
+					Statement st = res.next();
+					if (st.getPredicate().equals(DCAT.THEME)) {
+						link.themes.add(st.getObject());
+					} else if (LABELS.contains(st.getPredicate())) {
+						link.labels.add(st.getObject());
+					}
+				}
+			}
+		}
+		index.put(link);
+	}
+
+	/**
+	 * Read subjects from the store and update the index
+	 *
+	 * @param subjs subjects
+	 */
+	private synchronized void reindex(Set<Resource> subjs) {
+		List<RepositoryConnection> conns = new ArrayList<>();
+		try {
+			for (Repository shard: PartitionedRepository.shards(repo)) {
+				conns.add(shard.getConnection());
+			}
+			for (Resource subj: subjs) {
+				reindex(conns, subj);
+			}
+		} catch (RepositoryException e) {
+			LOG.error("Could not update theme index", e);
+			ready = false;
+		} finally {
+			conns.forEach(RepositoryConnection::close);
+		}
+	}
+
+	@Override
+	public void added(Model m) {
+		reindex(m.subjects());
+	}
+
+	@Override
+	public void deleted(IRI subj, Resource graph) {
+		if (graph != null) {
+			reset();
+		} else if (subj != null) {
+			reindex(Collections.singleton(subj));
+		}
+	}
+
+	@Override
+	public void reset() {
+		try {
+			rebuild();
+		} catch (WebApplicationException e) {
+			LOG.error("Could not rebuild theme index", e);
+			ready = false;
+		}
+	}
+
+	@Override
+	public void start() throws Exception {
+		reset();
+	}
+
+	@Override
+	public void stop() throws Exception {
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param repo RDF store
+	 */
+	public ThemeIndex(Repository repo) {
+		this.repo = repo;
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.belgif.link.helpers;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Collection;
+
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+
+/**
+ * Summary of an update: statements added and removed
+ *
+ * @author Bart.Hanssens
+ */
+public class UpdateResult {
+	private final Model added;
+	private final Model removed;
+
+	@JsonProperty
+	public long getAdded() {
+		return added.size();
+	}
+
+	@JsonProperty
+	public long getRemoved() {
+		return removed.size();
+	}
+
+	/**
+	 * Check if the store was changed
+	 *
+	 * @return true if statements were added or removed
+	 */
+	@JsonIgnore
+	public boolean isChanged() {
+		return !added.isEmpty() || !removed.isEmpty();
+	}
+
+	/**
+	 * Get the statements that were added
+	 *
+	 * @return triples
+	 */
+	@JsonIgnore
+	public Model getAddedStatements() {
+		return added;
+	}
+
+	/**
+	 * Get the statements that were removed
+	 *
+	 * @return triples
+	 */
+	@JsonIgnore
+	public Model getRemovedStatements() {
+		return removed;
+	}
+
+	/**
+	 * Get the statements that were added or removed, e.g. to invalidate caches
+	 *
+	 * @return triples
+	 */
+	@JsonIgnore
+	public Model getChanges() {
+		Model m = new LinkedHashModel(added);
+		m.addAll(removed);
+		return m;
+	}
+
+	/**
+	 * Combine the results of several updates, e.g. one per shard
+	 *
+	 * @param results update results
+	 * @return combined result
+	 */
+	public static UpdateResult merge(Collection<UpdateResult> results) {
+		Model added = new LinkedHashModel();
+		Model removed = new LinkedHashModel();
+		results.forEach(r -> {
+			added.addAll(r.added);
+			removed.addAll(r.removed);
+		});
+		return new UpdateResult(added, removed);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param added statements added
+	 * @param removed statements removed
+	 */
+	public UpdateResult(Model added, Model removed) {
+		this.added = added;
+		this.removed = removed;
+	}
+}
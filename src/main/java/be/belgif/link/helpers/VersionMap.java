@@ -0,0 +1,368 @@
+/*
+ * Copyright (c) 2017, Bart Hanssens <bart.hanssens@fedict.be>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.belgif.link.helpers;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import io.dropwizard.lifecycle.Managed;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.EntityTag;
+
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Version and modification time of each subject and graph, updated after each
+ * change, so conditional requests can be answered without querying the store.
+ *
+ * Subjects and graphs that did not change have a common base version. Changes
+ * of which the effect is not known in detail (e.g. deleting a graph changes the
+ * subjects in that graph) raise the base version.
+ *
+ * The sequence numbers of the change log are used as versions when there is a
+ * change log, prefixed with the identity of the log, so the versions can be
+ * rebuilt at startup and remain the same.
+ * Otherwise the versions start again at each startup, with a different prefix.
+ *
+ * While a subject or graph is being written, it has no version: the store may
+ * already return the new statements before the new version is known.
+ *
+ * @author Bart.Hanssens
+ */
+public class VersionMap implements Managed {
+	private final static Logger LOG = LoggerFactory.getLogger(VersionMap.class);
+
+	private final ChangeLog changes;
+	private final Map<Resource, Version> subjects = new ConcurrentHashMap<>();
+	private final Map<Resource, Version> graphs = new ConcurrentHashMap<>();
+	private final AtomicLong counter = new AtomicLong();
+	// subjects and graphs being written, and writes changing all subjects or graphs
+	private final Map<Resource, Integer> writing = new ConcurrentHashMap<>();
+	private final AtomicInteger writingSubjects = new AtomicInteger();
+	private final AtomicInteger writingGraphs = new AtomicInteger();
+
+	private volatile String epoch = "";
+	private volatile Version subjectBase;
+	private volatile Version graphBase;
+
+	/**
+	 * Version of a subject or graph
+	 */
+	public static class Version {
+		private final long number;
+		private final Date date;
+		private final String id;
+
+		/**
+		 * Get the version as a strong entity tag, different for each format
+		 *
+		 * @param fmt RDF format of the response
+		 * @return entity tag
+		 */
+		public EntityTag getTag(RDFFormat fmt) {
+			return new EntityTag(id + "-" + fmt.getDefaultFileExtension());
+		}
+
+		/**
+		 * Get the time of the last modification
+		 *
+		 * @return date
+		 */
+		public Date getDate() {
+			return date;
+		}
+
+		Version(String epoch, long number, long time) {
+			this.number = number;
+			this.date = new Date(time);
+			this.id = epoch + number;
+		}
+	}
+
+	/**
+	 * Get the most recent of two versions
+	 *
+	 * @param a version
+	 * @param b version
+	 * @return most recent
+	 */
+	private static Version latest(Version a, Version b) {
+		return (a.number >= b.number) ? a : b;
+	}
+
+	/**
+	 * Get the version of a subject or graph
+	 *
+	 * @param map versions of subjects or graphs
+	 * @param base base version
+	 * @param key subject or graph
+	 * @return version
+	 */
+	private static Version get(Map<Resource, Version> map, Version base, Resource key) {
+		Version v = map.get(key);
+		return (v != null) ? latest(v, base) : base;
+	}
+
+	/**
+	 * Get the version of a subject
+	 *
+	 * @param subj subject
+	 * @return version or null while the subject is being written
+	 */
+	public Version getSubject(Resource subj) {
+		if (writingSubjects.get() > 0 || writing.containsKey(subj)) {
+			return null;
+		}
+		return get(subjects, subjectBase, subj);
+	}
+
+	/**
+	 * Get the version of a graph
+	 *
+	 * @param graph graph
+	 * @return version or null while the graph is being written
+	 */
+	public Version getGraph(Resource graph) {
+		if (writingGraphs.get() > 0 || writing.containsKey(graph)) {
+			return null;
+		}
+		return get(graphs, graphBase, graph);
+	}
+
+	/**
+	 * Mark subjects and graphs as being written, before the store is updated
+	 *
+	 * @param keys subjects and graphs
+	 * @param allSubjects true if the write can change any subject
+	 * @param allGraphs true if the write can change any graph
+	 */
+	public void begin(Collection<? extends Resource> keys, boolean allSubjects, boolean allGraphs) {
+		keys.forEach(k -> writing.merge(k, 1, Integer::sum));
+		if (allSubjects) {
+			writingSubjects.incrementAndGet();
+		}
+		if (allGraphs) {
+			writingGraphs.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Mark the end of a write, after the version was updated (or the write failed)
+	 *
+	 * @param keys subjects and graphs
+	 * @param allSubjects true if the write could change any subject
+	 * @param allGraphs true if the write could change any graph
+	 */
+	public void end(Collection<? extends Resource> keys, boolean allSubjects, boolean allGraphs) {
+		keys.forEach(k -> writing.computeIfPresent(k, (key, n) -> (n > 1) ? n - 1 : null));
+		if (allSubjects) {
+			writingSubjects.decrementAndGet();
+		}
+		if (allGraphs) {
+			writingGraphs.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Set the version of all subjects in a model, and of the graphs
+	 *
+	 * @param m triples or null
+	 * @param v version
+	 */
+	private void touch(Model m, Version v) {
+		if (m == null) {
+			return;
+		}
+		m.subjects().forEach(s -> subjects.merge(s, v, VersionMap::latest));
+		m.contexts().stream().filter(c -> c != null)
+							.forEach(c -> graphs.merge(c, v, VersionMap::latest));
+	}
+
+	/**
+	 * Raise the base version of all subjects
+	 *
+	 * @param v version
+	 */
+	private void touchSubjects(Version v) {
+		subjectBase = latest(subjectBase, v);
+		subjects.values().removeIf(old -> old.number <= v.number);
+	}
+
+	/**
+	 * Raise the base version of all graphs
+	 *
+	 * @param v version
+	 */
+	private void touchGraphs(Version v) {
+		graphBase = latest(graphBase, v);
+		graphs.values().removeIf(old -> old.number <= v.number);
+	}
+
+	/**
+	 * Apply a change
+	 *
+	 * @param v new version
+	 * @param op operation (add, replace, diff, delete, import)
+	 * @param subj deleted subject or null
+	 * @param graph deleted graph or null
+	 * @param added statements added or null
+	 * @param removed statements removed or null
+	 */
+	private void apply(Version v, String op, Resource subj, Resource graph,
+										Model added, Model removed) {
+		switch (op) {
+			case "import":
+				touchSubjects(v);
+				touchGraphs(v);
+				break;
+			case "delete":
+				// the graphs of the subject, or the subjects in the graph
+				if (subj != null) {
+					subjects.merge(subj, v, VersionMap::latest);
+					touchGraphs(v);
+				}
+				if (graph != null) {
+					graphs.merge(graph, v, VersionMap::latest);
+					touchSubjects(v);
+				}
+				break;
+			case "replace":
+				// the statements of the subjects in other graphs are removed
+				touchGraphs(v);
+				touch(added, v);
+				break;
+			default:
+				touch(added, v);
+				touch(removed, v);
+		}
+	}
+
+	/**
+	 * Record a change, after the store was updated
+	 *
+	 * @param seq sequence number in the change log, or 0 if there is no change log
+	 * @param op operation (add, replace, diff, delete, import)
+	 * @param subj deleted subject or null
+	 * @param graph deleted graph or null
+	 * @param added statements added or null
+	 * @param removed statements removed or null
+	 */
+	public void update(long seq, String op, Resource subj, Resource graph,
+										Model added, Model removed) {
+		long number = (seq > 0) ? seq : counter.incrementAndGet();
+		apply(new Version(epoch, number, System.currentTimeMillis()),
+									op, subj, graph, added, removed);
+	}
+
+	/**
+	 * Parse N-Quads
+	 *
+	 * @param s string or null
+	 * @return triples or null
+	 */
+	private static Model parse(String s) {
+		if (s == null) {
+			return null;
+		}
+		try {
+			return Rio.parse(new StringReader(s), "", RDFFormat.NQUADS);
+		} catch (IOException ioe) {
+			throw new WebApplicationException(ioe);
+		}
+	}
+
+	/**
+	 * Rebuild the versions from the change log, if there is one
+	 */
+	@Override
+	public void start() {
+		long start = System.currentTimeMillis();
+		subjects.clear();
+		graphs.clear();
+
+		if (changes == null) {
+			// versions of a previous run must not match
+			epoch = Long.toString(start, 36) + "-";
+			subjectBase = new Version(epoch, 0, start);
+			graphBase = subjectBase;
+			return;
+		}
+		// the same sequence number in another log is another version
+		epoch = changes.getId() + "-";
+		// changes no longer in the log are older than the oldest change in the log
+		Version base = new Version(epoch, changes.getFirst() - 1, start);
+		subjectBase = base;
+		graphBase = base;
+		changes.replay(c -> {
+			if (c.getSeq() == changes.getFirst()) {
+				Version first = new Version(epoch, base.number, c.getTime());
+				subjectBase = first;
+				graphBase = first;
+			}
+			apply(new Version(epoch, c.getSeq(), c.getTime()), c.getOp(),
+					(c.getSubject() != null) ? QueryHelper.asURI(c.getSubject()) : null,
+					(c.getGraph() != null) ? QueryHelper.asURI(c.getGraph()) : null,
+					parse(c.getAdded()), parse(c.getRemoved()));
+		});
+		LOG.info("Rebuilt versions of {} subjects and {} graphs in {} ms", subjects.size(),
+									graphs.size(), System.currentTimeMillis() - start);
+	}
+
+	@Override
+	public void stop() {
+		// nothing to do
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param changes change log or null
+	 * @param metrics metric registry
+	 */
+	public VersionMap(ChangeLog changes, MetricRegistry metrics) {
+		this.changes = changes;
+		metrics.register(MetricRegistry.name(VersionMap.class, "subjects"),
+							(Gauge<Integer>) subjects::size);
+		metrics.register(MetricRegistry.name(VersionMap.class, "graphs"),
+							(Gauge<Integer>) graphs::size);
+	}
+}
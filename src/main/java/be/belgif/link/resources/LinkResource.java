@@ -25,25 +25,78 @@
  */
 package be.belgif.link.resources;
 
+import be.belgif.link.helpers.AsyncStore;
+import be.belgif.link.helpers.ChangeLog;
+import be.belgif.link.helpers.ChangeNotifier;
+import be.belgif.link.helpers.Coalescer;
+import be.belgif.link.helpers.Exporter;
+import be.belgif.link.helpers.GraphIndex;
+import be.belgif.link.helpers.ImportResult;
+import be.belgif.link.helpers.LinkCache;
+import be.belgif.link.helpers.LinkMetrics;
+import be.belgif.link.helpers.ParallelLoader;
 import be.belgif.link.helpers.QueryHelper;
 import be.belgif.link.helpers.RDFMediaType;
+import be.belgif.link.helpers.SerializedModel;
+import be.belgif.link.helpers.StatementSource;
+import be.belgif.link.helpers.TextIndex;
+import be.belgif.link.helpers.ThemeIndex;
+import be.belgif.link.helpers.UpdateResult;
+import be.belgif.link.helpers.VersionMap;
+import be.belgif.link.helpers.VersionMap.Version;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.annotation.ExceptionMetered;
+import com.codahale.metrics.annotation.Timed;
+import com.google.common.util.concurrent.Striped;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import javax.annotation.security.PermitAll;
 
 import javax.ws.rs.Consumes;
+import javax.ws.rs.CookieParam;
 import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.FormParam;
 import javax.ws.rs.GET;
+import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.NewCookie;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.core.Variant;
 
+import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
 import org.eclipse.rdf4j.model.vocabulary.DCAT;
 import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.rio.RDFFormat;
 
 /**
  * Storage for link metadata
@@ -52,48 +105,469 @@ import org.eclipse.rdf4j.repository.Repository;
  */
 
 @Path("/link")
-@Produces({RDFMediaType.JSONLD, RDFMediaType.NTRIPLES, RDFMediaType.TTL})
+@Produces({RDFMediaType.JSONLD, RDFMediaType.NTRIPLES, RDFMediaType.TTL, RDFMediaType.BINARY})
 public class LinkResource  {
+	private final static String PIN = "link-pin";
+
 	private final Repository repo;
+	private final Repository reads;
+	private final long pin;
+	private final LinkCache cache;
+	private final ThemeIndex themes;
+	private final GraphIndex graphs;
+	private final TextIndex text;
+	private final int searchLimit;
+	private final int pageSize;
+	private final int maxPageSize;
+	private final ChangeNotifier notifier;
+	private final int batchSize;
+	private final ParallelLoader loader;
+	private final AsyncStore async;
+	private final Exporter exporter;
+	private final ChangeLog changes;
+	private final long wait;
+	private final VersionMap versions;
+	// writes to the same subjects or graphs are logged in the order of the store
+	private final Striped<Lock> writeLocks = Striped.lock(64);
+	private final Meter notModified = LinkMetrics.getMetrics().meter(
+				MetricRegistry.name(LinkResource.class, "getById", "notModified"));
+	// identical searches running at the same time share the result
+	private final Coalescer<List<Object>, Model> searches = new Coalescer<>(
+		LinkMetrics.getMetrics().meter(MetricRegistry.name(LinkResource.class, "searchLink", "coalesced")));
+	private final Coalescer<List<Object>, Model> filters = new Coalescer<>(
+		LinkMetrics.getMetrics().meter(MetricRegistry.name(LinkResource.class, "searchBy", "coalesced")));
+
+
+	/**
+	 * Get the store to read from: the primary store when the client wrote something
+	 * recently (read-your-writes), otherwise the read replicas
+	 * 
+	 * @param until value of the pin cookie or null
+	 * @return repository
+	 */
+	private Repository reader(String until) {
+		if (until != null && reads != repo) {
+			try {
+				if (Long.parseLong(until) > System.currentTimeMillis()) {
+					return repo;
+				}
+			} catch (NumberFormatException nfe) {
+				// invalid cookie, use the replicas
+			}
+		}
+		return reads;
+	}
+
+	/**
+	 * Build the response to a write, pinning the client to the primary store
+	 * for a while, so it can read its own writes while the replicas catch up
+	 * 
+	 * @param rb response builder
+	 * @return response
+	 */
+	private Response written(ResponseBuilder rb) {
+		if (pin > 0 && reads != repo) {
+			String until = String.valueOf(System.currentTimeMillis() + pin);
+			int maxAge = (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(pin));
+			rb.cookie(new NewCookie(PIN, until, "/", null, null, maxAge, false, true));
+		}
+		return rb.build();
+	}
+
+	/**
+	 * Record a change in the change log and the version map, if there are
+	 * 
+	 * @param op operation
+	 * @param subj deleted subject or null
+	 * @param graph deleted graph or null
+	 * @param added statements added or null
+	 * @param removed statements removed or null
+	 */
+	private void log(String op, Resource subj, Resource graph, Model added, Model removed) {
+		long seq = (changes != null) ? changes.append(op, subj, graph, added, removed) : 0;
+		if (versions != null) {
+			versions.update(seq, op, subj, graph, added, removed);
+		}
+	}
+
+	/**
+	 * Write to the store and record the change. When there is a change log,
+	 * writes to the same subjects or graphs are done one at a time, so their
+	 * sequence numbers follow the order in which the store was updated.
+	 * Writes to other subjects are not blocked.
+	 * The subjects and graphs have no version until the change is recorded,
+	 * so a response with the new statements never gets the old version.
+	 * 
+	 * @param <T> type of the result
+	 * @param keys subjects and graphs that are written
+	 * @param allSubjects true if the write can change any subject
+	 * @param allGraphs true if the write can change any graph
+	 * @param write update of the store, including the notification and logging
+	 * @return result
+	 */
+	private <T> T write(Collection<? extends Resource> keys, boolean allSubjects, 
+										boolean allGraphs, Supplier<T> write) {
+		if (versions != null) {
+			versions.begin(keys, allSubjects, allGraphs);
+		}
+		Iterable<Lock> locks = (changes != null) ? writeLocks.bulkGet(keys) 
+												: Collections.emptyList();
+		locks.forEach(Lock::lock);
+		try {
+			return write.get();
+		} finally {
+			locks.forEach(Lock::unlock);
+			if (versions != null) {
+				versions.end(keys, allSubjects, allGraphs);
+			}
+		}
+	}
+
+	/**
+	 * Get the subjects and named graphs of a model
+	 * 
+	 * @param m triples
+	 * @return subjects and graphs
+	 */
+	private static Set<Resource> keys(Model m) {
+		Set<Resource> keys = new LinkedHashSet<>(m.subjects());
+		m.contexts().stream().filter(c -> c != null).forEach(keys::add);
+		return keys;
+	}
+
+	/**
+	 * Get the version of a subject or graph.
+	 * Read replicas may lag behind, so there is only a version when reading
+	 * from the primary store.
+	 * 
+	 * @param r store to read from
+	 * @param url URI of the subject or null
+	 * @param subj URI of the subject or null, alias for url
+	 * @param graph graph or null
+	 * @return version or null
+	 */
+	private Version version(Repository r, String url, String subj, String graph) {
+		if (versions == null || r != repo) {
+			return null;
+		}
+		if (graph != null && !graph.isEmpty()) {
+			return versions.getGraph(QueryHelper.asURI(graph));
+		}
+		String u = (url != null) ? url : subj;
+		return (u != null && !u.isEmpty()) ? versions.getSubject(QueryHelper.asURI(u)) : null;
+	}
+
+	/**
+	 * Add the version as entity tag and last modification time to a response.
+	 * The version is read before loading the response, and is only added when
+	 * it did not change during the load: otherwise the response may or may not
+	 * include the change.
+	 * 
+	 * @param resp response
+	 * @param ver version before loading, or null
+	 * @param now version after loading, or null
+	 * @param fmt RDF format of the response
+	 * @return response
+	 */
+	private static Response validated(Response resp, Version ver, Version now, RDFFormat fmt) {
+		if (ver == null || now == null || resp.getStatus() != Response.Status.OK.getStatusCode()) {
+			return resp;
+		}
+		EntityTag tag = ver.getTag(fmt);
+		if (!tag.equals(now.getTag(fmt))) {
+			return resp;
+		}
+		return Response.fromResponse(resp).tag(tag).lastModified(ver.getDate()).build();
+	}
+
+	/**
+	 * Get the page size, within the maximum page size
+	 * 
+	 * @param limit requested page size or null
+	 * @return page size
+	 */
+	private int pageSize(Integer limit) {
+		return (limit != null && limit > 0) ? Math.min(limit, maxPageSize) : pageSize;
+	}
+
+	/**
+	 * Build a response, with a link to the next page if there is one
+	 * 
+	 * @param entity page
+	 * @param uri request URI
+	 * @param param query parameter for the next page
+	 * @param next value of the parameter, or null if this is the last page
+	 * @return response
+	 */
+	private static Response page(Object entity, UriInfo uri, String param, Object next) {
+		ResponseBuilder rb = Response.ok(entity);
+		if (next != null) {
+			rb.link(uri.getRequestUriBuilder().replaceQueryParam(param, next).build(), "next");
+		}
+		return rb.build();
+	}
+
+	/**
+	 * Get the last subject of a full page, sorted by IRI
+	 * 
+	 * @param m triples
+	 * @param limit page size
+	 * @return last subject as string, or null if this is the last page
+	 */
+	private static String last(Model m, int limit) {
+		if (m.subjects().size() < limit) {
+			return null;
+		}
+		return m.subjects().stream().map(Resource::stringValue).max(String::compareTo).get();
+	}
 
-			
 	/**
-	 * Get all triples for a subject
+	 * Get all triples for a subject, or a page of subjects in a graph
 	 * 
 	 * @param url URI of the subject or null
 	 * @param subj URI of the subject or null, alias for url
 	 * @param graph graph of the subject or null
-	 * @return HTTP OK
+	 * @param after IRI of the last subject of the previous page in the graph
+	 * @param limit maximum number of subjects in the graph
+	 * @param req request, for content negotiation and conditional requests
+	 * @param uri request URI, for paging
+	 * @param until read from the primary store until this time (read-your-writes)
+	 * @param resp suspended response, HTTP OK, graphs are streamed from the store
 	 */
 	@GET
-	public Model getById(@QueryParam("url") String url, 
-			@QueryParam("s") String subj, @QueryParam("g") String graph) {	
+	public void getById(@QueryParam("url") String url, 
+			@QueryParam("s") String subj, @QueryParam("g") String graph,
+			@QueryParam("after") String after, @QueryParam("limit") Integer limit,
+			@Context Request req, @Context UriInfo uri, @CookieParam(PIN) String until,
+			@Suspended AsyncResponse resp) {
+		Repository r = reader(until);
+		Variant v = req.selectVariant(RDFMediaType.getVariants());
+		RDFFormat fmt = (v != null) ? RDFMediaType.getRDFFormat(v.getMediaType()) : null;
+		// revalidation does not need the store
+		Version ver = (fmt != null) ? version(r, url, subj, graph) : null;
+		if (ver != null) {
+			ResponseBuilder rb = req.evaluatePreconditions(ver.getDate(), ver.getTag(fmt));
+			if (rb != null) {
+				notModified.mark();
+				resp.resume(rb.build());
+				return;
+			}
+		}
+		async.submit(resp, MetricRegistry.name(LinkResource.class, "getById"),
+			() -> validated(getById(r, url, subj, graph, after, limit, req, uri), 
+							ver, version(r, url, subj, graph), fmt));
+	}
+
+	/**
+	 * Get all triples for a subject, or a page of subjects in a graph
+	 * 
+	 * @param r store to read from
+	 * @param url URI of the subject or null
+	 * @param subj URI of the subject or null, alias for url
+	 * @param graph graph of the subject or null
+	 * @param after IRI of the last subject of the previous page in the graph
+	 * @param limit maximum number of subjects in the graph
+	 * @param req request
+	 * @param uri request URI
+	 * @return response
+	 */
+	private Response getById(Repository r, String url, String subj, String graph, 
+			String after, Integer limit, Request req, UriInfo uri) {
 		if (graph != null && !graph.isEmpty()) {
-			return QueryHelper.get(repo, null, QueryHelper.asURI(graph));
+			IRI g = QueryHelper.asURI(graph);
+			int size = pageSize(limit);
+			List<IRI> subjs = (graphs != null && graphs.isReady())
+								? graphs.get(g, after, size)
+								: QueryHelper.getSubjects(r, g, after, size);
+			String next = (subjs.size() < size) ? null 
+											: subjs.get(subjs.size() - 1).stringValue();
+			return page(new StatementSource(r, subjs, g, next == null), uri, "after", next);
 		}
 		// alias for backwards compatibility
 		String u = (url != null) ? url : subj;
 		if (u != null && !u.isEmpty()) {
-			return QueryHelper.get(repo, QueryHelper.asURI(u), null);
+			return getSerialized(QueryHelper.asURI(u), req);
+		}
+		return Response.noContent().build();
+	}
+
+	/**
+	 * Get pre-serialized triples for a subject, or 304 if the tag still matches.
+	 * The cache is only filled from the primary store, since a replica may still
+	 * return the triples from before a write that invalidated the cache.
+	 * 
+	 * @param subj subject IRI
+	 * @param req request
+	 * @return response
+	 */
+	private Response getSerialized(IRI subj, Request req) {
+		Variant v = req.selectVariant(RDFMediaType.getVariants());
+		if (v == null) {
+			return Response.notAcceptable(RDFMediaType.getVariants()).build();
+		}
+		MediaType mt = v.getMediaType();
+		RDFFormat fmt = RDFMediaType.getRDFFormat(mt);
+		SerializedModel ser = cache.get(repo, subj, null, fmt);
+		if (ser.isEmpty()) {
+			throw new WebApplicationException(Response.Status.NOT_FOUND);
+		}
+		ResponseBuilder rb = req.evaluatePreconditions(ser.getTag());
+		if (rb != null) {
+			return rb.build();
+		}
+		LinkMetrics.response(fmt, ser.getBytes().length, ser.size());
+		// binary RDF has no character set
+		MediaType type = fmt.hasCharset() ? mt.withCharset("utf-8") : mt;
+		return Response.ok(ser.getBytes(), type).tag(ser.getTag()).build();
+	}
+
+	/**
+	 * Get all triples for multiple subjects, in one request to the store
+	 * 
+	 * @param urls URIs of the subjects
+	 * @param resp suspended response, triples
+	 */
+	@GET
+	@Path("/_batch")
+	public void getBatch(@QueryParam("url") List<String> urls, @Suspended AsyncResponse resp) {
+		async.submit(resp, MetricRegistry.name(LinkResource.class, "getBatch"),
+			() -> getBatch(urls));
+	}
+
+	/**
+	 * Get all triples for multiple subjects, for long lists of URIs
+	 * 
+	 * @param urls URIs of the subjects, as form parameters
+	 * @param resp suspended response, triples
+	 */
+	@POST
+	@Path("/_batch")
+	@Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+	public void postBatch(@FormParam("url") List<String> urls, @Suspended AsyncResponse resp) {
+		async.submit(resp, MetricRegistry.name(LinkResource.class, "getBatch"),
+			() -> getBatch(urls));
+	}
+
+	/**
+	 * Get all triples for multiple subjects, at most the maximum page size.
+	 * Like single subjects, the cache is only filled from the primary store.
+	 * 
+	 * @param urls URIs of the subjects
+	 * @return triples
+	 */
+	private Model getBatch(List<String> urls) {
+		Set<IRI> subjs = urls.stream().filter(u -> !u.isEmpty()).map(QueryHelper::asURI)
+								.collect(Collectors.toCollection(LinkedHashSet::new));
+		if (subjs.isEmpty() || subjs.size() > maxPageSize) {
+			throw new WebApplicationException(Response.Status.BAD_REQUEST);
+		}
+		return cache.get(repo, subjs);
+	}
+
+	/**
+	 * Export all statements, or all statements in a graph, as a stream.
+	 * An interrupted export can be resumed from the last checkpoint comment.
+	 * 
+	 * @param graph graph URI or null for all graphs
+	 * @param from number of statements to skip, i.e. the last checkpoint
+	 * @return statements, streamed from the store
+	 */
+	@GET
+	@Path("/_export")
+	@Produces({RDFMediaType.NQUADS, RDFMediaType.NTRIPLES, RDFMediaType.TRIG,
+				RDFMediaType.BINARY})
+	@ExceptionMetered
+	@Timed
+	public StatementSource export(@QueryParam("g") String graph,
+			@QueryParam("from") @DefaultValue("0") long from) {
+		if (from < 0) {
+			throw new WebApplicationException(Response.Status.BAD_REQUEST);
 		}
-		return null;
+		IRI g = (graph != null && !graph.isEmpty()) ? QueryHelper.asURI(graph) : null;
+		return exporter.source(g, from);
 	}
 	
 	/**
-	 * Add statements to the store
+	 * Add statements to the store.
+	 * In diff mode, only the statements that changed are written, and the
+	 * number of statements added and removed is returned.
+	 * In replace mode, all statements of the subjects are replaced at once.
 	 * 
 	 * @param m
+	 * @param mode add (default), diff or replace
 	 * @return HTTP OK when done 
 	 */
 	@PermitAll
 	@PUT
-	@Consumes({RDFMediaType.JSONLD, RDFMediaType.NTRIPLES, RDFMediaType.TTL})
+	@Consumes({RDFMediaType.JSONLD, RDFMediaType.NTRIPLES, RDFMediaType.TTL,
+				RDFMediaType.BINARY})
 	@ExceptionMetered
-	public Response putModel(Model m) {
-		QueryHelper.add(repo, m);
-		return Response.ok().build();
+	@Timed
+	public Response putModel(Model m, @QueryParam("mode") @DefaultValue("add") String mode) {
+		switch (mode) {
+			case "add":
+				write(keys(m), false, false, () -> {
+					QueryHelper.add(repo, m);
+					notifier.added(m);
+					log(mode, null, null, m, null);
+					return null;
+				});
+				return written(Response.ok());
+			case "replace":
+				// the statements of the subjects in other graphs are removed
+				write(keys(m), false, true, () -> {
+					UpdateResult rep = QueryHelper.replace(repo, m);
+					notifier.added(rep.getChanges());
+					log(mode, null, null, rep.getAddedStatements(), rep.getRemovedStatements());
+					return rep;
+				});
+				return written(Response.ok());
+			case "diff":
+				UpdateResult res = write(keys(m), false, false, () -> {
+					UpdateResult diff = QueryHelper.diff(repo, m);
+					if (diff.isChanged()) {
+						notifier.added(diff.getChanges());
+						log(mode, null, null, diff.getAddedStatements(), diff.getRemovedStatements());
+					}
+					return diff;
+				});
+				return written(Response.ok(res, MediaType.APPLICATION_JSON_TYPE));
+			default:
+				throw new WebApplicationException(Response.Status.BAD_REQUEST);
+		}
 	}
 	
+	/**
+	 * Bulk import statements, parsed as a stream and committed in batches.
+	 * N-Triples and N-Quads can be parsed in parallel.
+	 * 
+	 * @param in request body
+	 * @param parallel use parallel loader (line-based formats only)
+	 * @param headers HTTP headers
+	 * @return import summary
+	 */
+	@PermitAll
+	@POST
+	@Path("/_import")
+	@Consumes({RDFMediaType.JSONLD, RDFMediaType.NQUADS, RDFMediaType.NTRIPLES,
+				RDFMediaType.TTL, RDFMediaType.TRIG, RDFMediaType.BINARY})
+	@Produces(MediaType.APPLICATION_JSON)
+	@ExceptionMetered
+	@Timed
+	public ImportResult importData(InputStream in, @QueryParam("parallel") boolean parallel,
+			@Context HttpHeaders headers) {
+		RDFFormat fmt = RDFMediaType.getRDFFormat(headers.getMediaType());
+		// not ordered with other writes, consumers reload everything after an import
+		return write(Collections.emptySet(), true, true, () -> {
+			ImportResult res = (parallel && ParallelLoader.isSupported(fmt))
+								? loader.load(in, fmt)
+								: QueryHelper.load(repo, in, fmt, batchSize);
+			notifier.reset();
+			log("import", null, null, null, null);
+			return res;
+		});
+	}
+
 	/**
 	 * Delete all statements for a given subject or graph
 	 * 
@@ -105,51 +579,193 @@ public class LinkResource  {
 	@PermitAll
 	@DELETE
 	@ExceptionMetered
+	@Timed
 	public Response delete(@QueryParam("url") String url,
 			@QueryParam("s") String subj, @QueryParam("g") String graph) {
 		if (graph != null && !graph.isEmpty()) {
-			QueryHelper.delete(repo, null, QueryHelper.asURI(graph));
+			IRI g = QueryHelper.asURI(graph);
+			write(Collections.singleton(g), true, false, () -> {
+				QueryHelper.delete(repo, null, g);
+				notifier.deleted(null, g);
+				log("delete", null, g, null, null);
+				return null;
+			});
 		}
 		// alias for backwards compatibility
 		String u = (url != null) ? url : subj;
 		if (url != null && !url.isEmpty()) {
-			QueryHelper.delete(repo, QueryHelper.asURI(u), null);
+			IRI s = QueryHelper.asURI(u);
+			write(Collections.singleton(s), false, true, () -> {
+				Model removed = QueryHelper.delete(repo, s, null);
+				notifier.deleted(s, null);
+				log("delete", s, null, null, removed);
+				return null;
+			});
 		}
-		return Response.ok().build();
+		return written(Response.ok());
 	}
 
 	/**
-	 * Full text search
+	 * Get the changes from a sequence number onwards, as a JSON array.
+	 * When there are no new changes, the request waits until there are,
+	 * or until the waiting time is over.
+	 * The link to the next changes is in the Link header.
 	 * 
-	 * @param text
-	 * @return triples
+	 * @param from sequence number of the first change, or null for new changes only
+	 * @param limit maximum number of changes
+	 * @param secs maximum number of seconds to wait
+	 * @param uri request URI, for the link to the next changes
+	 * @param resp suspended response, changes or HTTP Gone if no longer available
 	 */
 	@GET
-	@Path("/_search")
+	@Path("/_changes")
+	@Produces(MediaType.APPLICATION_JSON)
 	@ExceptionMetered
-	public Model searchLink(@QueryParam("q") String text) {
-		return QueryHelper.getFTS(repo, text);
+	public void getChanges(@QueryParam("from") Long from, 
+			@QueryParam("limit") Integer limit, @QueryParam("wait") Long secs,
+			@Context UriInfo uri, @Suspended AsyncResponse resp) {
+		if (changes == null) {
+			resp.resume(new WebApplicationException(Response.Status.NOT_FOUND));
+			return;
+		}
+		long ms = (secs != null) ? Math.min(TimeUnit.SECONDS.toMillis(secs), wait) : wait;
+		changes.poll((from != null) ? from : changes.getNext(), pageSize(limit), ms,
+						uri.getRequestUriBuilder(), resp);
+	}
+
+	/**
+	 * Full text search, best matches first.
+	 * The last word of the text is also used as a prefix.
+	 * 
+	 * @param q text
+	 * @param offset number of results to skip
+	 * @param limit maximum number of results
+	 * @param uri request URI, for paging
+	 * @param until read from the primary store until this time (read-your-writes)
+	 * @param resp suspended response, triples
+	 */
+	@GET
+	@Path("/_search")
+	public void searchLink(@QueryParam("q") String q, 
+			@QueryParam("offset") @DefaultValue("0") int offset,
+			@QueryParam("limit") Integer limit, @Context UriInfo uri,
+			@CookieParam(PIN) String until, @Suspended AsyncResponse resp) {
+		Repository r = reader(until);
+		async.submit(resp, MetricRegistry.name(LinkResource.class, "searchLink"),
+			() -> searchLink(r, q, offset, limit, uri));
+	}
+
+	/**
+	 * Full text search, up to the search limit
+	 * 
+	 * @param r store to read from, if there is no full text index
+	 * @param q text
+	 * @param offset number of results to skip
+	 * @param limit maximum number of results
+	 * @param uri request URI
+	 * @return response
+	 */
+	private Response searchLink(Repository r, String q, int offset, Integer limit, UriInfo uri) {
+		int start = Math.min(Math.max(offset, 0), searchLimit);
+		int size = Math.min(pageSize(limit), searchLimit - start);
+		if (size <= 0) {
+			return page(QueryHelper.setNamespaces(new LinkedHashModel()), uri, "offset", null);
+		}
+		Model m = searches.get(Arrays.asList(q, start, size, r), 
+					() -> (text != null && text.isReady()) 
+							? text.search(q, start, size)
+							: QueryHelper.getFTS(r, q, start, size));
+		Integer next = (m.subjects().size() < size || start + size >= searchLimit) 
+						? null : start + size;
+		return page(m, uri, "offset", next);
 	}
 	
 	/**
-	 * Search by dcat:theme
+	 * Search by dcat:theme, sorted by IRI
 	 * 
-	 * @param uri theme uri
-	 * @return triples
+	 * @param theme theme uri
+	 * @param after IRI of the last link of the previous page
+	 * @param limit maximum number of links
+	 * @param uri request URI, for paging
+	 * @param until read from the primary store until this time (read-your-writes)
+	 * @param resp suspended response, triples
 	 */
 	@GET
 	@Path("/_filter")
-	@ExceptionMetered
-	public Model searchBy(@QueryParam("theme") String uri) {
-		return QueryHelper.getLabelByPred(repo, DCAT.THEME, QueryHelper.asURI(uri));
+	public void searchBy(@QueryParam("theme") String theme, 
+			@QueryParam("after") String after, @QueryParam("limit") Integer limit,
+			@Context UriInfo uri, @CookieParam(PIN) String until, 
+			@Suspended AsyncResponse resp) {
+		Repository r = reader(until);
+		async.submit(resp, MetricRegistry.name(LinkResource.class, "searchBy"),
+			() -> searchBy(r, theme, after, limit, uri));
+	}
+
+	/**
+	 * Search by dcat:theme
+	 * 
+	 * @param r store to read from, if there is no theme index
+	 * @param theme theme uri
+	 * @param after IRI of the last link of the previous page
+	 * @param limit maximum number of links
+	 * @param uri request URI
+	 * @return response
+	 */
+	private Response searchBy(Repository r, String theme, String after, Integer limit, 
+			UriInfo uri) {
+		int size = pageSize(limit);
+		Model m = filters.get(Arrays.asList(theme, after, size, r),
+					() -> (themes != null && themes.isReady())
+							? themes.get(QueryHelper.asURI(theme), after, size)
+							: QueryHelper.getLabelByPred(r, DCAT.THEME, 
+											QueryHelper.asURI(theme), after, size));
+		return page(m, uri, "after", last(m, size));
 	}
 
 	/**
 	 * Constructor
 	 * 
-	 * @param repo 
+	 * @param repo primary store, for writing
+	 * @param reads store for reading, e.g. load-balanced read replicas
+	 * @param cache
+	 * @param themes theme index or null
+	 * @param graphs graph index or null
+	 * @param text full text index or null
+	 * @param searchLimit maximum number of ranked search results, offset included
+	 * @param notifier notified after each change
+	 * @param pageSize default number of subjects per page
+	 * @param maxPageSize maximum number of subjects per page
+	 * @param batchSize number of statements per transaction for bulk imports
+	 * @param loader parallel loader for bulk imports
+	 * @param async executor for read requests
+	 * @param exporter full export
+	 * @param changes change log or null
+	 * @param wait maximum milliseconds to wait for new changes
+	 * @param versions versions of subjects and graphs or null
+	 * @param pin milliseconds to read from the primary store after a write
 	 */
-	public LinkResource(Repository repo) {
+	public LinkResource(Repository repo, Repository reads, LinkCache cache, ThemeIndex themes,
+						GraphIndex graphs, TextIndex text, int searchLimit, ChangeNotifier notifier, 
+						int pageSize, int maxPageSize, int batchSize, ParallelLoader loader,
+						AsyncStore async, Exporter exporter, ChangeLog changes, long wait,
+						VersionMap versions, long pin) {
 		this.repo = repo;
+		this.reads = reads;
+		this.cache = cache;
+		this.themes = themes;
+		this.graphs = graphs;
+		this.text = text;
+		this.searchLimit = searchLimit;
+		this.pageSize = pageSize;
+		this.maxPageSize = maxPageSize;
+		this.notifier = notifier;
+		this.batchSize = batchSize;
+		this.loader = loader;
+		this.async = async;
+		this.exporter = exporter;
+		this.changes = changes;
+		this.wait = wait;
+		this.versions = versions;
+		this.pin = pin;
 	}
 }